@@ -0,0 +1,26 @@
+package com.tiger.rpc.common.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * @ClassName: Hedged.java
+ *
+ * @Description: 对冲调用：主请求超过观测到的延迟分位数仍未返回时，向另一个provider发送相同请求，取先成功的结果，取消另一个
+ *              仅用于幂等的读方法，需要协议支持异步调用(netty)，返回类型为void的方法不生效
+ *              只对同步代理生效，异步、批量代理不对冲
+ *
+ * @Author: Tiger
+ *
+ * @Date: 2021/7/10
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Hedged {
+
+    /**
+     * 触发对冲的延迟分位数，默认p95
+     * @return
+     */
+    double percentile() default 95;
+}
@@ -0,0 +1,19 @@
+package com.tiger.rpc.common.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * @ClassName: OneWay.java
+ *
+ * @Description: 单向调用：consumer发送请求后立即返回，不等待响应；provider执行方法后不回写响应
+ *              仅对返回类型为void的接口方法生效，方法异常只在provider记录
+ *
+ * @Author: Tiger
+ *
+ * @Date: 2021/6/28
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface OneWay {
+}
@@ -63,6 +63,32 @@ public class BaseConfig<E> implements Serializable {
      */
     private Class<?> interfaceClass;
 
+    /**
+     * 序列化方式，逗号分隔，按优先级排列(如：kryo,protostuff)
+     * provider为支持列表，发布到zk；consumer为偏好列表，与provider协商
+     * 为空时使用协议默认方式
+     */
+    private String serializers;
+
+    /**
+     * 默认压缩阈值(字节)
+     */
+    public static final int DEFAULT_COMPRESS_THRESHOLD = 8 * 1024;
+
+    /**
+     * 数据包压缩方式(netty协议：snappy、gzip)，为空时不压缩
+     * provider压缩响应，consumer压缩请求，对端按帧头标记解压
+     * gzip只在调用线程(业务线程)上压缩，io线程上发送的帧(如合并的批量请求)不压缩
+     * 不序列化
+     */
+    private transient String compression;
+
+    /**
+     * 压缩阈值(字节)，序列化后不小于该值的数据包才压缩，小数据包不压缩以保证延迟
+     * 不序列化
+     */
+    private transient int compressThreshold = DEFAULT_COMPRESS_THRESHOLD;
+
     public String getId() {
         return id;
     }
@@ -138,6 +164,33 @@ public class BaseConfig<E> implements Serializable {
         return (T) this;
     }
 
+    public String getSerializers() {
+        return serializers;
+    }
+
+    public <T extends BaseConfig> T setSerializers(String serializers) {
+        this.serializers = serializers;
+        return (T) this;
+    }
+
+    public String getCompression() {
+        return compression;
+    }
+
+    public <T extends BaseConfig> T setCompression(String compression) {
+        this.compression = compression;
+        return (T) this;
+    }
+
+    public int getCompressThreshold() {
+        return compressThreshold;
+    }
+
+    public <T extends BaseConfig> T setCompressThreshold(int compressThreshold) {
+        this.compressThreshold = compressThreshold < 0 ? 0 : compressThreshold;
+        return (T) this;
+    }
+
     public Class<?> getInterfaceClass() {
         if (interfaceClass != null) {
             return interfaceClass;
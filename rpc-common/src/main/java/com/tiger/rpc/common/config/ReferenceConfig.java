@@ -1,5 +1,15 @@
 package com.tiger.rpc.common.config;
 
+import com.tiger.rpc.common.annotation.Hedged;
+import com.tiger.rpc.common.annotation.OneWay;
+import com.tiger.rpc.common.consumer.handler.DefaultRpcHandler;
+import com.tiger.rpc.common.consumer.policy.RetryBudget;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
 /**
  * @ClassName: ReferenceConfig.java
  *
@@ -23,6 +33,31 @@ public class ReferenceConfig<T> extends BaseConfig<T> {
      */
     private int retry = 2;
 
+    /**
+     * 调用总超时(毫秒)，包含所有重试及退避等待，默认0不限制
+     */
+    private int callTimeout = 0;
+
+    /**
+     * 重试预算比例，默认0.1：每个服务的重试量不超过成功调用量的10%
+     */
+    private double retryBudgetRatio = RetryBudget.DEFAULT_RATIO;
+
+    /**
+     * 对冲调用的方法名，与{@link Hedged}注解等效，仅用于幂等的读方法，只对同步代理生效
+     */
+    private Set<String> hedgedMethods = Collections.emptySet();
+
+    /**
+     * 对冲延迟分位数，默认p95，方法有{@link Hedged}注解时以注解为准
+     */
+    private double hedgePercentile = DefaultRpcHandler.DEFAULT_HEDGE_PERCENTILE;
+
+    /**
+     * 单向调用的方法名，与{@link OneWay}注解等效，仅对返回类型为void的方法生效
+     */
+    private Set<String> oneWayMethods = Collections.emptySet();
+
     public T getProxy() {
         return proxy;
     }
@@ -44,4 +79,59 @@ public class ReferenceConfig<T> extends BaseConfig<T> {
         }
         return this;
     }
+
+    public int getCallTimeout() {
+        return callTimeout;
+    }
+
+    public ReferenceConfig<T> setCallTimeout(int callTimeout) {
+        this.callTimeout = callTimeout < 0 ? 0 : callTimeout;
+        return this;
+    }
+
+    public double getRetryBudgetRatio() {
+        return retryBudgetRatio;
+    }
+
+    public ReferenceConfig<T> setRetryBudgetRatio(double retryBudgetRatio) {
+        this.retryBudgetRatio = retryBudgetRatio < 0 ? RetryBudget.DEFAULT_RATIO : retryBudgetRatio;
+        return this;
+    }
+
+    public Set<String> getHedgedMethods() {
+        return hedgedMethods;
+    }
+
+    public ReferenceConfig<T> setHedgedMethods(Set<String> hedgedMethods) {
+        this.hedgedMethods = hedgedMethods == null ? Collections.emptySet() : new HashSet<>(hedgedMethods);
+        return this;
+    }
+
+    public double getHedgePercentile() {
+        return hedgePercentile;
+    }
+
+    public ReferenceConfig<T> setHedgePercentile(double hedgePercentile) {
+        this.hedgePercentile = hedgePercentile <= 0 || hedgePercentile > 100 ? DefaultRpcHandler.DEFAULT_HEDGE_PERCENTILE : hedgePercentile;
+        return this;
+    }
+
+    public Set<String> getOneWayMethods() {
+        return oneWayMethods;
+    }
+
+    public ReferenceConfig<T> setOneWayMethods(Set<String> oneWayMethods) {
+        this.oneWayMethods = oneWayMethods == null ? Collections.emptySet() : new HashSet<>(oneWayMethods);
+        return this;
+    }
+
+    /**
+     * 是否单向调用：返回类型为void，且有{@link OneWay}注解或在单向方法名中
+     * @param method
+     * @return
+     */
+    public boolean isOneWay(Method method) {
+        return method.getReturnType() == void.class
+                && (method.isAnnotationPresent(OneWay.class) || oneWayMethods.contains(method.getName()));
+    }
 }
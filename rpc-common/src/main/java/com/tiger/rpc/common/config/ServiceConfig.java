@@ -61,6 +61,18 @@ public class ServiceConfig<T> extends BaseConfig<T> {
      */
     private ServiceStatus serviceStatus = ServiceStatus.ENABLED;
 
+    /**
+     * 服务独立业务线程数，按服务分发时生效，为0时使用共享线程池
+     * 不序列化
+     */
+    private transient int executorThreads;
+
+    /**
+     * 服务独立业务线程池队列大小，按服务分发时生效
+     * 不序列化
+     */
+    private transient int executorQueueSize;
+
     public int getPort() {
         return port;
     }
@@ -140,6 +152,24 @@ public class ServiceConfig<T> extends BaseConfig<T> {
         return this;
     }
 
+    public int getExecutorThreads() {
+        return executorThreads;
+    }
+
+    public ServiceConfig<T> setExecutorThreads(int executorThreads) {
+        this.executorThreads = executorThreads < 0 ? 0 : executorThreads;
+        return this;
+    }
+
+    public int getExecutorQueueSize() {
+        return executorQueueSize;
+    }
+
+    public ServiceConfig<T> setExecutorQueueSize(int executorQueueSize) {
+        this.executorQueueSize = executorQueueSize < 0 ? 0 : executorQueueSize;
+        return this;
+    }
+
     public ServiceStatus getServiceStatus() {
         return serviceStatus;
     }
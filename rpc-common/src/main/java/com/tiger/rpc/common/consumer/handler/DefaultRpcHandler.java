@@ -1,7 +1,10 @@
 package com.tiger.rpc.common.consumer.handler;
 
 import com.alibaba.fastjson.JSON;
+import com.tiger.rpc.common.annotation.Hedged;
+import com.tiger.rpc.common.consumer.policy.LatencyRecorder;
 import com.tiger.rpc.common.consumer.policy.ProviderStrategy;
+import com.tiger.rpc.common.consumer.policy.RetryBudget;
 import com.tiger.rpc.common.enums.ServiceCodeEnum;
 import com.tiger.rpc.common.exception.ServiceException;
 import com.tiger.rpc.common.helper.ReferenceHelper;
@@ -15,14 +18,28 @@ import org.apache.commons.pool2.impl.GenericKeyedObjectPool;
 import java.io.Closeable;
 import java.io.IOException;
 import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @ClassName: DefaultRpcHandler.java
  *
  * @Description: rpc通用服务代理
+ *              1.失败时按重试次数重试，重试时优先选择本次调用未失败过的provider
+ *              2.重试前指数退避(带随机抖动)，总耗时不超过调用总超时
+ *              3.重试消耗服务的重试预算，预算耗尽时不再重试
+ *              4.对冲调用：主请求超过延迟分位数未返回时向另一个provider发送相同请求，取先成功的结果，对冲同样消耗重试预算
  *
  * @Author: Tiger
  *
@@ -32,6 +49,26 @@ import java.util.List;
 @Slf4j
 public abstract class DefaultRpcHandler<T> implements InvocationHandler, Closeable {
 
+    /**
+     * 默认重试退避基数(毫秒)
+     */
+    public static final long DEFAULT_RETRY_BACKOFF_MILLIS = 20;
+
+    /**
+     * 重试退避上限(毫秒)
+     */
+    public static final long MAX_RETRY_BACKOFF_MILLIS = 1000;
+
+    /**
+     * 默认对冲延迟分位数
+     */
+    public static final double DEFAULT_HEDGE_PERCENTILE = 95;
+
+    /**
+     * 选择provider时避开失败provider的最多尝试次数
+     */
+    private static final int MAX_SELECT_ATTEMPTS = 3;
+
     /**
      * socket连接池
      */
@@ -52,6 +89,31 @@ public abstract class DefaultRpcHandler<T> implements InvocationHandler, Closeab
      */
     private int retry;
 
+    /**
+     * 调用总超时(毫秒)，包含所有重试及退避等待，为0时不限制
+     */
+    private int callTimeout;
+
+    /**
+     * 重试预算比例：重试量不超过成功量的比例，见{@link RetryBudget}
+     */
+    private double retryBudgetRatio = RetryBudget.DEFAULT_RATIO;
+
+    /**
+     * 重试退避基数(毫秒)，第n次重试最多等待 base * 2^(n-1)
+     */
+    private long retryBackoffMillis = DEFAULT_RETRY_BACKOFF_MILLIS;
+
+    /**
+     * 对冲调用的方法名，与{@link Hedged}注解等效
+     */
+    private Set<String> hedgedMethods = Collections.emptySet();
+
+    /**
+     * 对冲延迟分位数，方法有{@link Hedged}注解时以注解为准
+     */
+    private double hedgePercentile = DEFAULT_HEDGE_PERCENTILE;
+
     /**
      * 传入小集群地址列表uris，默认为null，当传入一个，表示定向指定
      * protocol(thrift/netty)://ip:port
@@ -116,25 +178,46 @@ public abstract class DefaultRpcHandler<T> implements InvocationHandler, Closeab
         Object result = null;
         Object client = null;
         int counter = -1;
+        //调用截止时间，本次调用失败过的provider
+        long deadline = deadline();
+        Set<String> failedKeys = null;
+        Throwable lastError = null;
         while (counter < retry && !successFlag) {
             //执行次数计数器递增
             counter++;
+            key = null;
+            tSocket = null;
+            long delay = 0;
             try {
-                key = getKey(method, args);
-                //连接池爆满后，borrowObject将会跑异常java.util.NoSuchElementException: Timeout waiting for idle object
-                tSocket = pool.borrowObject(key);
-                //生成具体对象
-                client = getClient(tSocket, method);
+                key = selectKey(method, args, failedKeys);
+                //获取连接：连接池爆满后，borrowObject将会跑异常java.util.NoSuchElementException: Timeout waiting for idle object
+                tSocket = borrowSocket(key, remaining(deadline));
+                //生成具体对象，等待时间不超过调用的剩余时间
+                client = getClient(tSocket, method, remaining(deadline));
                 //调用方法，接口方法，远程获取结果
-                result = callRemoteMethod(client, method, args);
+                result = isHedged(method) ? callHedged(client, key, method, args, deadline) : callRemoteMethod(client, method, args);
                 //设置处理成功
                 successFlag = true;
+                //成功调用存入重试预算
+                retryBudget(method).deposit();
                 //记录成功日志
                 doSuccessLog(method.getDeclaringClass().getName(), method.getName(), args, counter);
             } catch (Throwable e) {
                 //使用异常超类捕获，防止因反射异常引起未识别异常java.lang.reflect.UndeclaredThrowableException
                 //处理异常
                 Throwable tw = processException(e, counter, key, tSocket);
+                if (tw == null) {
+                    //可以重试：记录失败的provider，退避等待，超过截止时间或预算耗尽时不再重试
+                    if (key != null) {
+                        failedKeys = failedKeys == null ? new HashSet<>() : failedKeys;
+                        failedKeys.add(key);
+                    }
+                    delay = retryDelay(method, counter + 1, deadline);
+                    if (delay < 0) {
+                        tw = unwrap(e);
+                    }
+                    lastError = e;
+                }
                 if(tw != null){
                     //终止时，打印错误日志
                     doFailureLog(method.getDeclaringClass().getName(), method.getName(), args, counter, e);
@@ -153,14 +236,143 @@ public abstract class DefaultRpcHandler<T> implements InvocationHandler, Closeab
                 if(tSocket != null){
                     //最终处理
                     processFinally(key, client, tSocket);
-                    //退出
-                    pool.returnObject(key, tSocket);
+                    //归还连接
+                    returnSocket(key, tSocket);
+                }
+            }
+            if (delay > 0) {
+                //归还连接后退避等待，被中断时不再重试
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw unwrap(lastError);
                 }
             }
         }
         return result;
     }
 
+    /**
+     * 调用截止时间(毫秒)
+     * @return  未设置调用总超时时返回0
+     */
+    protected long deadline() {
+        return callTimeout > 0 ? System.currentTimeMillis() + callTimeout : 0;
+    }
+
+    /**
+     * 剩余时间(毫秒)
+     * @param deadline  截止时间，为0时不限制
+     * @return  不限制时返回0，已超时返回1(由本次尝试的超时结束调用)
+     */
+    protected static long remaining(long deadline) {
+        return deadline <= 0 ? 0 : Math.max(1, deadline - System.currentTimeMillis());
+    }
+
+    /**
+     * 重试前的退避等待时间：指数退避加随机抖动，等待[cap/2, cap)，cap = min(base * 2^(n-1), 上限)
+     *          1.等待后已到截止时间：不重试
+     *          2.服务的重试预算耗尽：不重试
+     * @param method    方法
+     * @param attempt   即将进行的重试次数，从1开始
+     * @param deadline  截止时间，为0时不限制
+     * @return  等待时间(毫秒)，小于0时不重试
+     */
+    protected long retryDelay(Method method, int attempt, long deadline) {
+        long delay = 0;
+        if (retryBackoffMillis > 0) {
+            long cap = Math.min(MAX_RETRY_BACKOFF_MILLIS, retryBackoffMillis << Math.min(attempt - 1, 20));
+            delay = cap / 2 + ThreadLocalRandom.current().nextLong(cap - cap / 2);
+        }
+        if (deadline > 0 && System.currentTimeMillis() + delay >= deadline) {
+            log.warn("Method[{}] retry skipped, call timeout[{}ms] reached", method.getDeclaringClass().getName() + "." + method.getName(), callTimeout);
+            return -1;
+        }
+        RetryBudget budget = retryBudget(method);
+        if (!budget.tryAcquire()) {
+            log.warn("Method[{}] retry skipped, retry budget of service exhausted", method.getDeclaringClass().getName() + "." + method.getName());
+            return -1;
+        }
+        return delay;
+    }
+
+    /**
+     * 服务的重试预算
+     * @param method
+     * @return
+     */
+    protected RetryBudget retryBudget(Method method) {
+        return RetryBudget.of(serviceName(method), retryBudgetRatio);
+    }
+
+    /**
+     * 选择provider，尽量避开本次调用失败过的provider
+     *          1.按策略重新选择，最多{@link #MAX_SELECT_ATTEMPTS}次
+     *          2.仍是失败过的provider时：小集群随机选择的，取第一个未失败的地址；否则使用最后一次的选择
+     * @param method
+     * @param args
+     * @param failedKeys    本次调用失败过的provider，可以为null
+     * @return
+     * @throws ServiceException
+     */
+    protected String selectKey(Method method, Object[] args, Set<String> failedKeys) throws ServiceException {
+        String key = getKey(method, args);
+        for (int i = 1; failedKeys != null && failedKeys.contains(key) && i < MAX_SELECT_ATTEMPTS; i++) {
+            key = getKey(method, args);
+        }
+        if (failedKeys != null && failedKeys.contains(key) && helper == null && providerStrategy == null) {
+            for (String uri : uris) {
+                int protocolIdx = uri.indexOf(Constants.PROTOCOL_HOST_SEPARATOR);
+                String candidate = protocolIdx > 0 ? uri.substring(protocolIdx + Constants.PROTOCOL_HOST_SEPARATOR.length()) : uri;
+                if (!failedKeys.contains(candidate)) {
+                    return candidate;
+                }
+            }
+        }
+        return key;
+    }
+
+    /**
+     * 终止重试时抛出的异常，反射异常取目标异常
+     * @param e
+     * @return
+     */
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof InvocationTargetException ? ((InvocationTargetException) e).getTargetException() : e;
+    }
+
+    /**
+     * 获取连接，默认从连接池借用，子类可覆盖(如使用多路复用的连接管理)
+     * @param key   host:port
+     * @return
+     * @throws Exception
+     */
+    protected T borrowSocket(String key) throws Exception {
+        return pool.borrowObject(key);
+    }
+
+    /**
+     * 获取连接，等待时间不超过调用的剩余时间
+     *          默认忽略剩余时间，子类可覆盖(如多路复用的连接管理首次建连时的等待)
+     * @param key   host:port
+     * @param remainingMillis   调用剩余时间(毫秒)，为0时不限制
+     * @return
+     * @throws Exception
+     */
+    protected T borrowSocket(String key, long remainingMillis) throws Exception {
+        return borrowSocket(key);
+    }
+
+    /**
+     * 归还连接，与{@link #borrowSocket(String)}对应
+     * @param key   host:port
+     * @param tSocket   连接
+     */
+    protected void returnSocket(String key, T tSocket) {
+        pool.returnObject(key, tSocket);
+    }
+
     /**
      * 远程调用，此处可以让子类覆盖，实现定制化处理
      * @param client    client对象
@@ -176,6 +388,123 @@ public abstract class DefaultRpcHandler<T> implements InvocationHandler, Closeab
         return method.invoke(client, args);
     }
 
+    /**
+     * 异步远程调用，对冲调用使用；协议不支持异步时返回null，不对冲
+     * @param client    client对象
+     * @param method    方法对象
+     * @param args      方法参数
+     * @return  调用结果future
+     */
+    protected CompletableFuture<Object> callRemoteAsync(Object client, Method method, Object[] args) {
+        return null;
+    }
+
+    /**
+     * 是否对冲调用：返回类型不为void，且有{@link Hedged}注解或在对冲方法名中
+     * @param method
+     * @return
+     */
+    protected boolean isHedged(Method method) {
+        return method.getReturnType() != void.class
+                && (method.isAnnotationPresent(Hedged.class) || hedgedMethods.contains(method.getName()));
+    }
+
+    /**
+     * 对冲调用
+     *          1.异步发送主请求，记录其延迟
+     *          2.主请求在延迟分位数内返回：直接返回；延迟样本不足时等待主请求
+     *          3.超过分位数未返回且重试预算充足：向另一个provider发送对冲请求，取先成功的结果，都失败时抛出后失败的异常
+     *          4.返回后取消未完成的请求(通知provider取消)
+     * @param client    主请求client对象
+     * @param key   主请求provider
+     * @param method    方法对象
+     * @param args      方法参数
+     * @param deadline  调用截止时间，为0时不限制
+     * @return
+     * @throws Throwable
+     */
+    protected Object callHedged(Object client, String key, Method method, Object[] args, long deadline) throws Throwable {
+        long start = System.nanoTime();
+        CompletableFuture<Object> primary = callRemoteAsync(client, method, args);
+        if (primary == null) {
+            //协议不支持异步，不对冲
+            return callRemoteMethod(client, method, args);
+        }
+        LatencyRecorder recorder = LatencyRecorder.of(method);
+        primary.whenComplete((r, e) -> {
+            if (e == null) {
+                recorder.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+            }
+        });
+        Hedged hedged = method.getAnnotation(Hedged.class);
+        long delay = recorder.percentile(hedged != null ? hedged.percentile() : hedgePercentile);
+        CompletableFuture<Object> backup = null;
+        try {
+            if (delay >= 0) {
+                try {
+                    return primary.get(delay, TimeUnit.MICROSECONDS);
+                } catch (TimeoutException e) {
+                    //超过分位数未返回，发送对冲请求
+                    backup = retryBudget(method).tryAcquire() ? sendHedge(key, method, args, deadline) : null;
+                }
+            }
+            if (backup == null) {
+                return primary.get();
+            }
+            log.debug("Method[{}] hedged after {}us, primary provider[{}]", method.getDeclaringClass().getName() + "." + method.getName(), delay, key);
+            CompletableFuture<Object> first = new CompletableFuture<>();
+            AtomicInteger failures = new AtomicInteger();
+            for (CompletableFuture<Object> future : Arrays.asList(primary, backup)) {
+                future.whenComplete((r, e) -> {
+                    if (e == null) {
+                        first.complete(r);
+                    } else if (failures.incrementAndGet() == 2) {
+                        first.completeExceptionally(e);
+                    }
+                });
+            }
+            return first.get();
+        } catch (ExecutionException e) {
+            //抛出远程异常
+            throw e.getCause();
+        } finally {
+            //取消未完成的请求
+            primary.cancel(true);
+            if (backup != null) {
+                backup.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * 发送对冲请求：选择主请求以外的provider，异步发送后立即归还连接
+     * @param primaryKey    主请求provider
+     * @param method    方法对象
+     * @param args      方法参数
+     * @param deadline  调用截止时间，为0时不限制
+     * @return  没有其他provider或发送失败时返回null
+     */
+    private CompletableFuture<Object> sendHedge(String primaryKey, Method method, Object[] args, long deadline) {
+        String key = null;
+        T tSocket = null;
+        try {
+            key = selectKey(method, args, Collections.singleton(primaryKey));
+            if (primaryKey.equals(key)) {
+                //没有其他provider
+                return null;
+            }
+            tSocket = borrowSocket(key, remaining(deadline));
+            return callRemoteAsync(getClient(tSocket, method, remaining(deadline)), method, args);
+        } catch (Throwable e) {
+            log.debug("Method[{}] hedge to provider[{}] error[{}]", method.getDeclaringClass().getName() + "." + method.getName(), key, e.getMessage());
+            return null;
+        } finally {
+            if (tSocket != null) {
+                returnSocket(key, tSocket);
+            }
+        }
+    }
+
     /**
      * 最终处理
      * @param key
@@ -252,6 +581,18 @@ public abstract class DefaultRpcHandler<T> implements InvocationHandler, Closeab
      */
     protected abstract Object getClient(T tSocket, Method method) throws Exception;
 
+    /**
+     * 获取具体对象，等待时间不超过调用的剩余时间
+     *          默认忽略剩余时间，由连接自身的超时控制单次尝试，子类可覆盖
+     * @param tSocket   连接/管道
+     * @param method   方法
+     * @param remainingMillis   调用剩余时间(毫秒)，为0时不限制
+     * @return
+     */
+    protected Object getClient(T tSocket, Method method, long remainingMillis) throws Exception {
+        return getClient(tSocket, method);
+    }
+
 
     /**
      * 获取key：每次需要换着取，防止网络延迟及其宕机异常情况。
@@ -261,12 +602,11 @@ public abstract class DefaultRpcHandler<T> implements InvocationHandler, Closeab
      */
     protected String getKey(Method method, Object[] args) throws ServiceException {
         //引入发现服务工具情况
-        Class<?> enClosedClazz = method.getDeclaringClass().getEnclosingClass();
-        enClosedClazz = enClosedClazz == null? method.getDeclaringClass() : enClosedClazz;
+        String serviceName = serviceName(method);
         String key = null;
         if (this.helper != null) {
             //1.获取地址
-            key = this.helper.getAddress(enClosedClazz.getName(), serviceVersion, uris);
+            key = this.helper.getAddress(serviceName, serviceVersion, uris);
             //2.校验地址(控制到方法级别)
             helper.checkAddress(key, method, args);
         } else if (CollectionUtils.isNotEmpty(uris)){
@@ -289,9 +629,20 @@ public abstract class DefaultRpcHandler<T> implements InvocationHandler, Closeab
             }
         } else {
             throw new ServiceException(ServiceCodeEnum.SERVICE_NO_AVAILABLE_PROVIDERS.getCode(),
-                    String.format(ServiceCodeEnum.SERVICE_NO_AVAILABLE_PROVIDERS.getValue(), enClosedClazz.getName()));
+                    String.format(ServiceCodeEnum.SERVICE_NO_AVAILABLE_PROVIDERS.getValue(), serviceName));
         }
         return key;
     }
 
+    /**
+     * 服务名：thrift接口取外部类名
+     * @param method
+     * @return
+     */
+    protected static String serviceName(Method method) {
+        Class<?> enClosedClazz = method.getDeclaringClass().getEnclosingClass();
+        enClosedClazz = enClosedClazz == null? method.getDeclaringClass() : enClosedClazz;
+        return enClosedClazz.getName();
+    }
+
 }
@@ -0,0 +1,102 @@
+package com.tiger.rpc.common.consumer.policy;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @ClassName: LatencyRecorder.java
+ *
+ * @Description: 调用延迟记录，每个方法一个
+ *              1.环形窗口保存最近{@link #WINDOW}次调用的延迟(微秒)
+ *              2.每记录{@link #REFRESH_INTERVAL}次重新排序窗口，分位数查询只读排序结果，不阻塞调用
+ *              3.样本不足{@link #MIN_SAMPLES}次时没有分位数
+ *
+ * @Author: Tiger
+ *
+ * @Date: 2021/7/10
+ */
+public final class LatencyRecorder {
+
+    /**
+     * 窗口大小
+     */
+    public static final int WINDOW = 256;
+
+    /**
+     * 计算分位数的最少样本数
+     */
+    public static final int MIN_SAMPLES = 32;
+
+    /**
+     * 重新排序的间隔(次数)
+     */
+    private static final int REFRESH_INTERVAL = 32;
+
+    /**
+     * 方法 <---> 延迟记录
+     */
+    private static final Map<Method, LatencyRecorder> RECORDERS = new ConcurrentHashMap<>();
+
+    /**
+     * 环形窗口
+     */
+    private final AtomicLongArray samples = new AtomicLongArray(WINDOW);
+
+    /**
+     * 记录总次数
+     */
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * 最近一次排序的窗口，样本不足时为null
+     */
+    private volatile long[] sorted;
+
+    private LatencyRecorder() {
+    }
+
+    /**
+     * 获取方法的延迟记录，不存在时创建
+     * @param method
+     * @return
+     */
+    public static LatencyRecorder of(Method method) {
+        return RECORDERS.computeIfAbsent(method, k -> new LatencyRecorder());
+    }
+
+    /**
+     * 记录一次调用的延迟
+     * @param micros    延迟(微秒)
+     */
+    public void record(long micros) {
+        long n = count.getAndIncrement();
+        samples.set((int) (n % WINDOW), micros);
+        if ((n + 1) >= MIN_SAMPLES && (n + 1) % REFRESH_INTERVAL == 0) {
+            int size = (int) Math.min(n + 1, WINDOW);
+            long[] copy = new long[size];
+            for (int i = 0; i < size; i++) {
+                copy[i] = samples.get(i);
+            }
+            Arrays.sort(copy);
+            sorted = copy;
+        }
+    }
+
+    /**
+     * 延迟分位数
+     * @param percentile    分位数(0, 100]
+     * @return  延迟(微秒)，样本不足时返回-1
+     */
+    public long percentile(double percentile) {
+        long[] current = this.sorted;
+        if (current == null) {
+            return -1;
+        }
+        int index = (int) Math.ceil(percentile / 100 * current.length) - 1;
+        return current[Math.max(0, Math.min(current.length - 1, index))];
+    }
+}
@@ -0,0 +1,103 @@
+package com.tiger.rpc.common.consumer.policy;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @ClassName: RetryBudget.java
+ *
+ * @Description: 重试预算，每个服务一个令牌桶
+ *              1.每次成功调用存入ratio个令牌，每次重试取出1个令牌，重试量不超过成功量的ratio
+ *              2.令牌有上限，空闲后最多允许{@link #MAX_TOKENS}次连续重试
+ *              3.provider大面积故障时令牌很快耗尽，停止重试，避免重试放大流量压垮集群
+ *
+ * @Author: Tiger
+ *
+ * @Date: 2021/6/12
+ */
+public final class RetryBudget {
+
+    /**
+     * 默认重试比例：重试量不超过成功量的10%
+     */
+    public static final double DEFAULT_RATIO = 0.1;
+
+    /**
+     * 令牌上限
+     */
+    public static final int MAX_TOKENS = 10;
+
+    /**
+     * 千分之一令牌为单位计数，比例可以精确到0.001
+     */
+    private static final long UNIT = 1000;
+
+    /**
+     * 服务名 <---> 重试预算
+     */
+    private static final Map<String, RetryBudget> BUDGETS = new ConcurrentHashMap<>();
+
+    /**
+     * 每次成功存入的令牌数(千分之一令牌)
+     */
+    private final long deposit;
+
+    /**
+     * 当前令牌数(千分之一令牌)，初始为上限
+     */
+    private final AtomicLong tokens = new AtomicLong(MAX_TOKENS * UNIT);
+
+    private RetryBudget(double ratio) {
+        this.deposit = Math.round((ratio < 0 ? DEFAULT_RATIO : ratio) * UNIT);
+    }
+
+    /**
+     * 获取服务的重试预算，不存在时按比例创建；同一服务共用一个预算，以首次创建的比例为准
+     * @param serviceName   服务名
+     * @param ratio 重试比例，小于0时使用默认比例
+     * @return
+     */
+    public static RetryBudget of(String serviceName, double ratio) {
+        return BUDGETS.computeIfAbsent(serviceName, k -> new RetryBudget(ratio));
+    }
+
+    /**
+     * 成功调用，存入令牌，不超过上限
+     */
+    public void deposit() {
+        if (deposit <= 0) {
+            return;
+        }
+        long current;
+        do {
+            current = tokens.get();
+            if (current >= MAX_TOKENS * UNIT) {
+                return;
+            }
+        } while (!tokens.compareAndSet(current, Math.min(MAX_TOKENS * UNIT, current + deposit)));
+    }
+
+    /**
+     * 重试前取出1个令牌
+     * @return  令牌不足时返回false，不应重试
+     */
+    public boolean tryAcquire() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current < UNIT) {
+                return false;
+            }
+        } while (!tokens.compareAndSet(current, current - UNIT));
+        return true;
+    }
+
+    /**
+     * 当前剩余令牌数
+     * @return
+     */
+    public double available() {
+        return (double) tokens.get() / UNIT;
+    }
+}
@@ -29,6 +29,8 @@ public enum ServiceCodeEnum {
 
     INTERFACE_NOT_IMPORT("INTERFACE_NOT_IMPORT", "Iface[%s] not ", "接口【%s】未引入"),
 
+    SERVICE_BUSY("SERVICE_BUSY", "Service[%s] is busy, request rejected", "服务【%s】繁忙，请求被拒绝"),
+
     SYSTEM_ERROR("SYSTEM_ERROR", "System error", "系统异常"),
 
     ;
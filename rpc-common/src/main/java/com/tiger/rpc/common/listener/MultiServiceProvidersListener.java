@@ -53,6 +53,10 @@ public class MultiServiceProvidersListener implements PathChildrenCacheListener
                 register.getServiceProvidersMap().get(referenceService).addAll(ProviderParser.parseSingleProvider(provider));
                 //打乱服务的provider的顺序
                 Collections.shuffle(register.getServiceProvidersMap().get(referenceService));
+                //缓存provider节点数据
+                register.updateProviderData(referenceService, provider, pathChildrenCacheEvent.getData().getData());
+                //预建连接
+                register.notifyProviderOnline(referenceService, provider);
                 log.debug("Provider[{}] online successfully", provider);
                 break;
             case CHILD_REMOVED:
@@ -63,9 +67,22 @@ public class MultiServiceProvidersListener implements PathChildrenCacheListener
                 referenceService = paths[paths.length - 3];
                 //将下线的provider(含有权重时，需要拆分成多个)移除
                 register.getServiceProvidersMap().get(referenceService).removeAll(ProviderParser.parseSingleProvider(provider));
+                register.updateProviderData(referenceService, provider, null);
+                //排空并关闭连接
+                register.notifyProviderOffline(referenceService, provider);
                 log.debug("Provider[{}] offline successfully", provider);
                 break;
 
+            case CHILD_UPDATED:
+                //provider节点数据变化(如服务配置更新)
+                childPath = pathChildrenCacheEvent.getData().getPath();
+                paths = childPath.split(Constants.PATH_SEPARATOR);
+                provider = paths[paths.length - 1];
+                referenceService = paths[paths.length - 3];
+                register.updateProviderData(referenceService, provider, pathChildrenCacheEvent.getData().getData());
+                log.debug("Provider[{}] data updated", provider);
+                break;
+
             default:
                 break;
         }
@@ -9,20 +9,29 @@ import com.tiger.rpc.common.utils.Constants;
 import com.tiger.rpc.common.utils.ProviderParser;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.pool2.impl.GenericKeyedObjectPool;
 import org.apache.curator.framework.recipes.cache.PathChildrenCache;
 import org.apache.curator.framework.state.ConnectionStateListener;
 import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -48,6 +57,11 @@ public abstract class ReferenceRegister implements Closeable {
      */
     private final Map<String, List<String>> serviceProvidersMap = new ConcurrentHashMap<String, List<String>>();
 
+    /**
+     * 服务名_版本号 <---> (provider地址(host:port) <---> provider节点数据)映射
+     */
+    private final Map<String, Map<String, String>> serviceProviderDataMap = new ConcurrentHashMap<>();
+
     /**
      * 接口(xxx.Iface)<--->ReferenceConfig
      */
@@ -78,6 +92,11 @@ public abstract class ReferenceRegister implements Closeable {
      */
     private Map<String, PathChildrenCache> serviceCacheMap = new ConcurrentHashMap<>();
 
+    /**
+     * provider上线时每个provider预建的连接数，为0时不预建
+     */
+    private int warmUpConnections = 1;
+
     /**
      * 无参构造器
      */
@@ -229,6 +248,27 @@ public abstract class ReferenceRegister implements Closeable {
             List<String> children = appRegister.getZkClient().getChildren().forPath(providersPath);
             //获取providers，加上权重; 将服务_版本号和provider list组成映射存储
             serviceProvidersMap.put(serviceName, ProviderParser.parseProviders(children));
+            //缓存provider节点数据(服务配置)
+            Map<String, String> providerData = new ConcurrentHashMap<>();
+            for (String child : children) {
+                String address = ProviderParser.parseAddress(child);
+                byte[] data;
+                try {
+                    data = address == null ? null : appRegister.getZkClient().getData().forPath(providersPath + Constants.PATH_SEPARATOR + child);
+                } catch (KeeperException.NoNodeException e) {
+                    //provider为临时节点，获取子节点后已下线，跳过，下线事件会移除该provider
+                    log.debug("Provider[{}] of service[{}] went offline during discovery", child, serviceName);
+                    continue;
+                }
+                if (data != null && data.length > 0) {
+                    providerData.put(address, new String(data, Charset.forName(Constants.DEFAULT_CHARSET)));
+                }
+            }
+            serviceProviderDataMap.put(serviceName, providerData);
+            //预建provider连接
+            for (String child : children) {
+                notifyProviderOnline(serviceName, child);
+            }
             if(serviceCacheMap.containsKey(serviceName)){
                 //已经存在，则跳过子节点监听器注册
                 continue;
@@ -452,6 +492,173 @@ public abstract class ReferenceRegister implements Closeable {
         return serviceProvidersMap;
     }
 
+    /**
+     * 更新provider节点数据
+     * @param serviceName   服务名_版本号
+     * @param provider  provider节点名(host:port:weight)
+     * @param data  节点数据，为空时移除
+     */
+    public void updateProviderData(String serviceName, String provider, byte[] data) {
+        String address = ProviderParser.parseAddress(provider);
+        if (address == null) {
+            return;
+        }
+        Map<String, String> providerData = serviceProviderDataMap.computeIfAbsent(serviceName, k -> new ConcurrentHashMap<>());
+        if (data == null || data.length == 0) {
+            providerData.remove(address);
+        } else {
+            providerData.put(address, new String(data, Charset.forName(Constants.DEFAULT_CHARSET)));
+        }
+    }
+
+    /**
+     * 获取provider节点数据(服务配置json)
+     * @param serviceName   服务名_版本号
+     * @param address   provider地址(host:port)
+     * @return  不存在时返回null
+     */
+    public String getProviderData(String serviceName, String address) {
+        Map<String, String> providerData = serviceProviderDataMap.get(serviceName);
+        return providerData == null ? null : providerData.get(address);
+    }
+
+    /**
+     * provider上线通知，预建连接
+     * @param serviceName   服务名_版本号
+     * @param provider  provider节点名(host:port:weight)
+     */
+    public void notifyProviderOnline(String serviceName, String provider) {
+        String address = ProviderParser.parseAddress(provider);
+        if (address == null || warmUpConnections <= 0) {
+            return;
+        }
+        try {
+            onProviderOnline(serviceName, address);
+        } catch (Exception e) {
+            log.warn("Warm up provider[{}] of service[{}] error: {}", address, serviceName, e.getMessage());
+        }
+    }
+
+    /**
+     * provider下线通知，地址不再被任何服务使用时关闭连接
+     * @param serviceName   服务名_版本号
+     * @param provider  provider节点名(host:port:weight)
+     */
+    public void notifyProviderOffline(String serviceName, String provider) {
+        String address = ProviderParser.parseAddress(provider);
+        if (address == null) {
+            return;
+        }
+        for (List<String> providers : serviceProvidersMap.values()) {
+            if (providers.contains(address)) {
+                //同一地址上的其他服务仍在使用
+                return;
+            }
+        }
+        try {
+            onProviderOffline(serviceName, address);
+        } catch (Exception e) {
+            log.warn("Drain provider[{}] of service[{}] error: {}", address, serviceName, e.getMessage());
+        }
+    }
+
+    /**
+     * provider上线，子类异步预建连接，不阻塞调用方
+     * @param serviceName   服务名_版本号
+     * @param address   provider地址(host:port)
+     */
+    protected void onProviderOnline(String serviceName, String address) {
+    }
+
+    /**
+     * provider下线，子类排空并关闭连接
+     * @param serviceName   服务名_版本号
+     * @param address   provider地址(host:port)
+     */
+    protected void onProviderOffline(String serviceName, String address) {
+    }
+
+    /**
+     * 连接池预建连接：后台创建空闲连接直到达到预建连接数
+     * @param pool  连接池
+     * @param address   provider地址(host:port)
+     */
+    protected <T> void warmUpPool(GenericKeyedObjectPool<String, T> pool, String address) {
+        if (pool == null || pool.isClosed()) {
+            return;
+        }
+        //多线程预建：不可达provider的建连只占用一个线程，不延迟其他provider
+        ConnectionExecutorHolder.execute(ConnectionExecutorHolder.WARM_UP, address, () -> {
+            try {
+                int size = pool.getNumIdle(address) + pool.getNumActive(address);
+                int max = pool.getMaxTotalPerKey() < 0 ? warmUpConnections : Math.min(warmUpConnections, pool.getMaxTotalPerKey());
+                for (int i = size; i < max; i++) {
+                    pool.addObject(address);
+                }
+                log.debug("Provider[{}] warmed up, idle connections: {}", address, pool.getNumIdle(address));
+            } catch (Exception e) {
+                log.warn("Warm up provider[{}] error: {}", address, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 连接池关闭provider的空闲连接，借出的连接归还后由检测回收
+     * @param pool  连接池
+     * @param address   provider地址(host:port)
+     */
+    protected <T> void drainPool(GenericKeyedObjectPool<String, T> pool, String address) {
+        if (pool == null || pool.isClosed()) {
+            return;
+        }
+        //关闭与预建分开执行，不排在建连之后
+        ConnectionExecutorHolder.execute(ConnectionExecutorHolder.DRAIN, address, () -> {
+            pool.clear(address);
+            log.debug("Idle connections of provider[{}] closed", address);
+        });
+    }
+
+    /**
+     * 预建/关闭连接的后台线程，使用时创建
+     *          1.预建：有界多线程，空闲线程回收，队列满时放弃预建(首次调用时再建连)
+     *          2.关闭：单独的单线程，不等待建连
+     */
+    private static class ConnectionExecutorHolder {
+        private static final int WARM_UP_THREADS = 4;
+        private static final int WARM_UP_QUEUE_SIZE = 1024;
+        private static final ExecutorService WARM_UP = newExecutor(WARM_UP_THREADS, WARM_UP_QUEUE_SIZE, "providerWarmUp-%d");
+        private static final ExecutorService DRAIN = newExecutor(1, Integer.MAX_VALUE, "providerDrain-%d");
+
+        private static ExecutorService newExecutor(int threads, int queueSize, String nameFormat) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(queueSize), new ThreadFactoryBuilder().setNameFormat(nameFormat).setDaemon(true).build());
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+
+        private static void execute(ExecutorService executor, String address, Runnable task) {
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                log.warn("Connection task of provider[{}] rejected: {}", address, e.getMessage());
+            }
+        }
+    }
+
+    public int getWarmUpConnections() {
+        return warmUpConnections;
+    }
+
+    /**
+     * 设置provider上线时预建的连接数，为0时不预建
+     * @param warmUpConnections
+     * @return
+     */
+    public ReferenceRegister setWarmUpConnections(int warmUpConnections) {
+        this.warmUpConnections = warmUpConnections < 0 ? 0 : warmUpConnections;
+        return this;
+    }
+
     public Map<String, ReferenceConfig> getReferenceBeanMap() {
         return referenceBeanMap;
     }
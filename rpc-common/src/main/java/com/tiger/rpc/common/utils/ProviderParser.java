@@ -38,6 +38,19 @@ public class ProviderParser {
         return addressList;
     }
 
+    /**
+     * 解析服务提供者地址
+     * @param provider  host:port:weight
+     * @return  host:port，格式错误时返回null
+     */
+    public static String parseAddress(String provider) {
+        String[] str = provider.split(Constants.HOST_PORT_SEPARATOR);
+        if (str.length == 3) {
+            return str[0] + Constants.HOST_PORT_SEPARATOR + str[1];
+        }
+        return null;
+    }
+
     /**
      * 批量解析服务提供者
      * @param providers
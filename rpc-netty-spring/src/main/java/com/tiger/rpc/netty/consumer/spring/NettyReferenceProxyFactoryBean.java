@@ -96,14 +96,21 @@ public class NettyReferenceProxyFactoryBean<T> implements FactoryBean<T>, Initia
             return;
         }
         NettyDefaultHandler handler = new NettyDefaultHandler(discovery);
-        //设置连接池
+        //设置连接池/连接管理
         handler.setPool(this.discovery.getPool());
+        handler.setChannelManager(this.discovery.getChannelManager());
         //设置服务版本号
         handler.setServiceVersion(config.getVersion());
         if(config.getRetry() > 0){
             //设置重试次数
             handler.setRetry(config.getRetry());
         }
+        //设置调用总超时、重试预算
+        handler.setCallTimeout(config.getCallTimeout());
+        handler.setRetryBudgetRatio(config.getRetryBudgetRatio());
+        //设置对冲调用
+        handler.setHedgedMethods(config.getHedgedMethods());
+        handler.setHedgePercentile(config.getHedgePercentile());
         //获取类加载器
 //        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
         ClassLoader classLoader = iFaceInterface.getClassLoader();
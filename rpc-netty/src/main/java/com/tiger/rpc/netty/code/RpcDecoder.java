@@ -1,19 +1,23 @@
 package com.tiger.rpc.netty.code;
 
-import com.alibaba.fastjson.JSON;
-import com.tiger.rpc.common.enums.ProtocolTypeEnum;
+import com.tiger.rpc.netty.compress.Compressor;
+import com.tiger.rpc.netty.compress.CompressorFactory;
+import com.tiger.rpc.netty.enums.MessageTypeEnum;
+import com.tiger.rpc.netty.packet.RequestPacket;
 import com.tiger.rpc.netty.packet.RpcPacket;
-import com.tiger.rpc.netty.utils.ProtoStuffUtil;
+import com.tiger.rpc.netty.serializer.Serializer;
+import com.tiger.rpc.netty.serializer.SerializerFactory;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.ByteToMessageDecoder;
-
-import java.util.List;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.DecoderException;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.TooLongFrameException;
 
 /**
  * @ClassName: RpcDecoder.java
  *
- * @Description: rpc包解码器：拆包和粘包
+ * @Description: rpc包解码器：基于帧头包长度拆包和粘包，帧头见{@link RpcHeader}
  *
  * @Author: Tiger
  *
@@ -21,86 +25,137 @@ import java.util.List;
  *
  * @param <T>   范型
  */
-public class RpcDecoder<T extends RpcPacket> extends ByteToMessageDecoder {
+public class RpcDecoder<T extends RpcPacket> extends LengthFieldBasedFrameDecoder {
 
     /**
-     * 是否有信息头部标记
+     * rpc包类型
      */
-    private boolean hasMsgHead = false;
+    private Class<T> rpcPacket;
 
     /**
-     * 信息头数组大小(netty)
+     * 期望的消息类型
      */
-    private final byte[] msgHeadBuffer;
+    private final MessageTypeEnum messageType;
 
     /**
-     * rpc包类型
+     * 最大帧长度，同时限制解压后的长度
      */
-    private Class<T> rpcPacket;
+    private final int maxFrameLength;
+
+    public RpcDecoder(Class<T> rpcPacket) {
+        this(rpcPacket, RpcHeader.DEFAULT_MAX_FRAME_LENGTH);
+    }
 
-    public RpcDecoder(Class<T> rpcPacket, ProtocolTypeEnum protocolType) {
+    /**
+     * @param rpcPacket rpc包类型
+     * @param maxFrameLength    最大帧长度，超过时抛出TooLongFrameException并丢弃该帧
+     */
+    public RpcDecoder(Class<T> rpcPacket, int maxFrameLength) {
+        super(maxFrameLength, RpcHeader.LENGTH_FIELD_OFFSET, RpcHeader.LENGTH_FIELD_LENGTH, 0, 0);
         this.rpcPacket = rpcPacket;
-        if (protocolType == null) {
-            //如果为null，则默认使用netty协议
-            protocolType = ProtocolTypeEnum.NETTY;
-        }
-        msgHeadBuffer = new byte[protocolType.getValue().getBytes().length];
+        this.messageType = RequestPacket.class.isAssignableFrom(rpcPacket) ? MessageTypeEnum.REQUEST : MessageTypeEnum.RESPONSE;
+        this.maxFrameLength = maxFrameLength;
     }
 
     /**
-     * 数据包解码：protocol dataLength data｜protocol dataLength data｜protocol dataLength data
-     *          1.协议检测
-     *          2.含有协议头数据包，读取交互数据包的大小
-     *          3.比较交互数据包的大小与tcp数据包（头信息大小）的大小
-     *          4.对于多数据包，进行拆包处理
-     *          5.对于残缺数据包，进行粘包处理
-     *          6.使用json反序列化数据包
-     *          7.将反序列化的包输出
+     * 数据包解码：header body｜header body｜header body
+     *          1.魔数检测，不匹配时关闭连接
+     *          2.按帧头包长度拆包，残缺帧等待后续数据
+     *          3.版本、消息类型检测，其他消息按消息类型对应的数据包反序列化
+     *          4.帧头标记压缩时，解压到池化buffer(长度不超过最大帧长度)
+     *          5.按帧头序列化编号，直接从ByteBuf反序列化数据包，不复制到中间字节数组
+     *          6.将反序列化的包输出
      * @param ctx
      * @param in
-     * @param out
+     * @return
      * @throws Exception
      */
     @Override
-    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
-        //hasMsgHead避免多次判断头信息
-        if (!hasMsgHead) {
-            while (true) {
-                //这里保证至少读到一个头信息，也可以读到一个头和数据长度再做处理
-                if (in.readableBytes() < msgHeadBuffer.length) {
-                    return;
+    protected Object decode(ChannelHandlerContext ctx, ByteBuf in) throws Exception {
+        if (in.readableBytes() >= 2 && in.getShort(in.readerIndex()) != RpcHeader.MAGIC) {
+            //非rpc数据，丢弃并关闭连接
+            in.skipBytes(in.readableBytes());
+            ctx.close();
+            throw new CorruptedFrameException("Illegal magic from " + ctx.channel().remoteAddress());
+        }
+        ByteBuf frame = (ByteBuf) super.decode(ctx, in);
+        if (frame == null) {
+            return null;
+        }
+        try {
+            frame.skipBytes(2);
+            byte version = frame.readByte();
+            if (version != RpcHeader.VERSION) {
+                throw new DecoderException("Unsupported protocol version: " + version);
+            }
+            byte flags = frame.readByte();
+            byte serializerId = frame.readByte();
+            byte type = frame.readByte();
+            Class<? extends RpcPacket> packetClass = rpcPacket;
+            if (type != messageType.getValue()) {
+                //同方向的消息(批量、流式等)；控制消息(握手等)两端都可接收
+                MessageTypeEnum otherType = MessageTypeEnum.valueOf(type);
+                if (!messageType.accepts(otherType)) {
+                    throw new DecoderException("Unexpected message type: " + type);
                 }
-                in.markReaderIndex();
-                in.readBytes(msgHeadBuffer);
-                String s = new String(msgHeadBuffer);
-                if (s.equals(ProtocolTypeEnum.NETTY.getValue())) {
-                    hasMsgHead = true;
-                    break;
-                } else {
-                    in.resetReaderIndex();
-                    in.readByte();
+                packetClass = otherType.getPacketClass();
+            }
+            long requestId = frame.readLong();
+            int dataLength = frame.readInt();
+            Serializer serializer = SerializerFactory.getById(serializerId);
+            if (serializer == null) {
+                throw new DecoderException("Unknown serializer id: " + serializerId);
+            }
+            ByteBuf body = frame.slice(frame.readerIndex(), dataLength);
+            byte compressorId = RpcHeader.compressorId(flags);
+            if (compressorId != 0) {
+                //解压
+                body = decompress(ctx, body, compressorId);
+            }
+            try {
+                //反序列化数据包
+                RpcPacket t = serializer.deserialize(body, packetClass);
+                t.setRequestId(requestId);
+                t.setSerializerId(serializerId);
+                t.setFlags((byte) (flags & ~RpcHeader.FLAG_COMPRESSOR_MASK));
+                return t;
+            } finally {
+                if (compressorId != 0) {
+                    body.release();
                 }
             }
+        } finally {
+            frame.release();
         }
+    }
 
-        /**
-         * 若当前可以获取到的字节数小于实际长度，则直接返回，直到当前可以获取到的字节数等于实际长度
-         */
-        in.markReaderIndex();
-        int dataLength = in.readInt();
-        if (in.readableBytes() < dataLength) {
-            in.resetReaderIndex();
-            return;
+    /**
+     * 解压body：originalLength(4) | 压缩数据
+     * @param ctx
+     * @param body
+     * @param compressorId
+     * @return  解压后的buffer，使用后释放
+     * @throws Exception
+     */
+    private ByteBuf decompress(ChannelHandlerContext ctx, ByteBuf body, byte compressorId) throws Exception {
+        Compressor compressor = CompressorFactory.getById(compressorId);
+        if (compressor == null) {
+            throw new DecoderException("Unknown compressor id: " + compressorId);
+        }
+        int originalLength = body.readInt();
+        if (originalLength < 0 || originalLength > maxFrameLength) {
+            throw new TooLongFrameException("Decompressed length " + originalLength + " exceeds " + maxFrameLength);
+        }
+        ByteBuf decompressed = ctx.alloc().buffer(originalLength, originalLength);
+        try {
+            compressor.decompress(body, decompressed);
+            if (decompressed.readableBytes() != originalLength) {
+                throw new CorruptedFrameException("Decompressed length " + decompressed.readableBytes() + " mismatch " + originalLength);
+            }
+            return decompressed;
+        } catch (Exception e) {
+            decompressed.release();
+            throw e;
         }
-        hasMsgHead = false;
-        //读取完整的消息体字节数组
-        byte[] data = new byte[dataLength];
-        in.readBytes(data);
-        //使用json反序列化数据包
-//        T  t = JSON.parseObject(data, rpcPacket);
-        //使用protoStuff反序列化数据包
-        T t = ProtoStuffUtil.deserialize(data, rpcPacket);
-        //将反序列化的包输出
-        out.add(t);
     }
 }
@@ -1,16 +1,25 @@
 package com.tiger.rpc.netty.code;
 
-import com.alibaba.fastjson.JSON;
+import com.tiger.rpc.netty.compress.Compressor;
+import com.tiger.rpc.netty.compress.CompressorFactory;
+import com.tiger.rpc.netty.enums.MessageTypeEnum;
+import com.tiger.rpc.netty.packet.RequestPacket;
 import com.tiger.rpc.netty.packet.RpcPacket;
-import com.tiger.rpc.netty.utils.ProtoStuffUtil;
+import com.tiger.rpc.netty.serializer.Serializer;
+import com.tiger.rpc.netty.serializer.SerializerFactory;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToByteEncoder;
+import lombok.extern.slf4j.Slf4j;
 
 /**
  * @ClassName: RpcEncoder.java
  *
  * @Description: rpc包编码器
+ *              1.需要压缩的数据包由写入方先调用{@link #precompress}在调用线程上编码成帧，编码器只透传
+ *              2.io线程上只使用可在io线程上执行的压缩(snappy)，其他压缩(gzip)的数据包在io线程上发送原始数据
  *
  * @Author: Tiger
  *
@@ -18,6 +27,7 @@ import io.netty.handler.codec.MessageToByteEncoder;
  *
  * @param <T>   范型
  */
+@Slf4j
 public class RpcEncoder<T extends RpcPacket> extends MessageToByteEncoder {
 
     /**
@@ -25,33 +35,131 @@ public class RpcEncoder<T extends RpcPacket> extends MessageToByteEncoder {
      */
     private Class<T> rpcPacket;
 
+    /**
+     * 消息类型
+     */
+    private final MessageTypeEnum messageType;
+
     public RpcEncoder(Class<T> rpcPacket){
         this.rpcPacket = rpcPacket;
+        this.messageType = RequestPacket.class.isAssignableFrom(rpcPacket) ? MessageTypeEnum.REQUEST : MessageTypeEnum.RESPONSE;
+    }
+
+    @Override
+    public boolean acceptOutboundMessage(Object msg) throws Exception {
+        if (rpcPacket.isInstance(msg)) {
+            return true;
+        }
+        //同方向的消息(批量、流式等)；控制消息(握手等)两端都可发送
+        return msg instanceof RpcPacket && messageType.accepts(MessageTypeEnum.valueOf(msg.getClass()));
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, Object rpcDataBody, ByteBuf out) throws Exception {
+        RpcPacket t = (RpcPacket) rpcDataBody;
+        MessageTypeEnum type = rpcPacket.isInstance(t) ? messageType : MessageTypeEnum.valueOf(t.getClass());
+        Compressor compressor = CompressorFactory.getById(t.getCompressorId());
+        if (compressor != null && !compressor.isIoThreadSafe()) {
+            //未经precompress的数据包(如io线程上合并的批量请求、INLINE分发的响应)不在io线程上gzip
+            compressor = null;
+        }
+        encode(ctx.alloc(), t, type, compressor, out);
+    }
+
+    /**
+     * 在调用线程上编码需要压缩的数据包：序列化、压缩不占用io线程，写入编码后的帧由编码器透传
+     *          不需要压缩、已在io线程上 or 编码失败时返回原数据包，由编码器编码(失败时写入future异常结束)
+     * @param channel   写入的channel
+     * @param packet    数据包
+     * @return  编码后的帧 or 原数据包
+     */
+    public static Object precompress(Channel channel, RpcPacket packet) {
+        Compressor compressor = CompressorFactory.getById(packet.getCompressorId());
+        if (compressor == null || channel.eventLoop().inEventLoop()) {
+            return packet;
+        }
+        ByteBuf out = channel.alloc().buffer();
+        try {
+            encode(channel.alloc(), packet, MessageTypeEnum.valueOf(packet.getClass()), compressor, out);
+            return out;
+        } catch (Exception e) {
+            out.release();
+            log.warn("Precompress packet[{}] failed, encode it on the io thread", packet.getRequestId(), e);
+            return packet;
+        }
     }
 
     /**
-     * 数据包编码：protocol dataLength data｜protocol dataLength data｜protocol dataLength data
-     *          1.使用json序列化数据包
-     *          2.写入协议信息
-     *          3.写入包长度
-     *          4.写入包数据
-     * @param ctx
-     * @param rpcDataBody   rpc数据传输包
+     * 数据包编码：header body｜header body｜header body，帧头见{@link RpcHeader}
+     *          1.写入魔数、版本、标记
+     *          2.写入序列化编号：数据包指定的方式不支持时回退到默认方式
+     *          3.写入消息类型、请求编号
+     *          4.预留包长度
+     *          5.不压缩时直接序列化到输出buffer(默认池化direct buffer)，不生成中间字节数组
+     *          6.压缩时序列化到临时buffer，不小于阈值时直接压缩到输出buffer，压缩后更小才保留并设置标记位，否则写入原始数据
+     *          7.回填包长度
+     * @param alloc
+     * @param t rpc数据传输包
+     * @param type  消息类型
+     * @param compressor    压缩，为null时不压缩
      * @param out
      * @throws Exception
      */
-    @Override
-    protected void encode(ChannelHandlerContext ctx, Object rpcDataBody, ByteBuf out) throws Exception {
-        //使用json序列化数据包
-//        byte[] data = JSON.toJSONBytes(rpcDataBody);
-        //使用protoStuff序列化数据包
-        byte[] data = ProtoStuffUtil.serialize(rpcDataBody);
-        //1.写入协议信息
-        T t = rpcPacket.cast(rpcDataBody);
-        out.writeBytes(t.getProtocolType().getValue().getBytes());
-        //2.写入包长度
-        out.writeInt(data.length);
-        //3.写入包数据
-        out.writeBytes(data);
+    private static void encode(ByteBufAllocator alloc, RpcPacket t, MessageTypeEnum type, Compressor compressor, ByteBuf out) throws Exception {
+        Serializer serializer = SerializerFactory.select(t.getSerializerId(), t);
+        //1.写入魔数、版本、标记
+        out.writeShort(RpcHeader.MAGIC);
+        out.writeByte(RpcHeader.VERSION);
+        int flagsIndex = out.writerIndex();
+        out.writeByte(t.getFlags());
+        //2.写入序列化编号
+        out.writeByte(serializer.getId());
+        //3.写入消息类型、请求编号
+        out.writeByte(type.getValue());
+        out.writeLong(t.getRequestId());
+        //4.预留包长度
+        int lengthIndex = out.writerIndex();
+        out.writeInt(0);
+        int bodyIndex = lengthIndex + RpcHeader.LENGTH_FIELD_LENGTH;
+        if (compressor == null) {
+            //5.序列化数据包，直接写入out
+            serializer.serialize(t, out);
+        } else {
+            //6.序列化后按阈值压缩
+            ByteBuf body = alloc.buffer();
+            try {
+                serializer.serialize(t, body);
+                if (body.readableBytes() < t.getCompressThreshold() || !compress(out, body, compressor, flagsIndex, bodyIndex)) {
+                    out.writeBytes(body);
+                }
+            } finally {
+                body.release();
+            }
+        }
+        //7.回填包长度
+        out.setInt(lengthIndex, out.writerIndex() - bodyIndex);
+    }
+
+    /**
+     * 压缩body：原始长度 | 压缩数据，直接写入out
+     * @param out
+     * @param body  序列化后的原始数据，压缩无收益时可读数据不变
+     * @param compressor
+     * @param flagsIndex    标记位位置
+     * @param bodyIndex body起始位置
+     * @return  压缩后不比原始数据小时回退out并返回false
+     * @throws Exception
+     */
+    private static boolean compress(ByteBuf out, ByteBuf body, Compressor compressor, int flagsIndex, int bodyIndex) throws Exception {
+        int bodyLength = body.readableBytes();
+        out.writeInt(bodyLength);
+        compressor.compress(body.slice(), out);
+        if (out.writerIndex() - bodyIndex >= bodyLength) {
+            //压缩无收益(如已压缩的数据)，发送原始数据
+            out.writerIndex(bodyIndex);
+            return false;
+        }
+        out.setByte(flagsIndex, RpcHeader.withCompressor(out.getByte(flagsIndex), compressor.getId()));
+        return true;
     }
 }
@@ -0,0 +1,83 @@
+package com.tiger.rpc.netty.code;
+
+/**
+ * @ClassName: RpcHeader.java
+ *
+ * @Description: rpc帧头定义，定长18字节：
+ *              magic(2) | version(1) | flags(1) | serializerId(1) | messageType(1) | requestId(8) | bodyLength(4) | body
+ *              压缩时body为：originalLength(4) | 压缩数据
+ *
+ * @Author: Tiger
+ *
+ * @Date: 2021/6/10
+ */
+public final class RpcHeader {
+
+    /**
+     * 魔数
+     */
+    public static final short MAGIC = (short) 0x7467;
+
+    /**
+     * 协议版本
+     */
+    public static final byte VERSION = 1;
+
+    /**
+     * 标记位：单向请求，provider不回写响应
+     */
+    public static final byte FLAG_ONE_WAY = 0x01;
+
+    /**
+     * 标记位：压缩编号(第2、3位)，为0时body未压缩，见{@link com.tiger.rpc.netty.compress.CompressorFactory}
+     */
+    public static final byte FLAG_COMPRESSOR_MASK = 0x06;
+
+    /**
+     * 压缩编号在标记位中的偏移
+     */
+    public static final int FLAG_COMPRESSOR_SHIFT = 1;
+
+    /**
+     * 帧头长度
+     */
+    public static final int HEADER_LENGTH = 18;
+
+    /**
+     * 包长度字段偏移
+     */
+    public static final int LENGTH_FIELD_OFFSET = 14;
+
+    /**
+     * 包长度字段大小
+     */
+    public static final int LENGTH_FIELD_LENGTH = 4;
+
+    /**
+     * 默认最大帧长度：16M
+     */
+    public static final int DEFAULT_MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+    private RpcHeader() {
+    }
+
+    /**
+     * 从标记位读取压缩编号
+     * @param flags
+     * @return
+     */
+    public static byte compressorId(byte flags) {
+        return (byte) ((flags & FLAG_COMPRESSOR_MASK) >> FLAG_COMPRESSOR_SHIFT);
+    }
+
+    /**
+     * 在标记位中设置压缩编号
+     * @param flags
+     * @param compressorId
+     * @return
+     */
+    public static byte withCompressor(byte flags, byte compressorId) {
+        return (byte) ((flags & ~FLAG_COMPRESSOR_MASK) | ((compressorId << FLAG_COMPRESSOR_SHIFT) & FLAG_COMPRESSOR_MASK));
+    }
+
+}
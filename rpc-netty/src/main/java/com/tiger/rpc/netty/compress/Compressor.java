@@ -0,0 +1,55 @@
+package com.tiger.rpc.netty.compress;
+
+import io.netty.buffer.ByteBuf;
+
+import java.io.IOException;
+
+/**
+ * @ClassName: Compressor.java
+ *
+ * @Description: 数据包压缩
+ *              1.编号写入帧头标记位，解码时根据编号解压
+ *              2.名称用于服务配置
+ *              3.直接在ByteBuf上压缩/解压，不生成中间字节数组
+ *
+ * @Author: Tiger
+ *
+ * @Date: 2021/7/10
+ */
+public interface Compressor {
+
+    /**
+     * 压缩编号，写入帧头标记位，取值1~3
+     * @return
+     */
+    byte getId();
+
+    /**
+     * 压缩名称
+     * @return
+     */
+    String getName();
+
+    /**
+     * 是否可以在io线程上压缩：耗cpu的压缩(如gzip)在io线程上执行会阻塞该线程上所有连接的读写
+     * @return  false时只在调用线程上压缩，见{@link com.tiger.rpc.netty.code.RpcEncoder#precompress}
+     */
+    boolean isIoThreadSafe();
+
+    /**
+     * 压缩in的全部可读数据，写入out
+     * @param in    原始数据
+     * @param out   输出buffer
+     * @throws IOException
+     */
+    void compress(ByteBuf in, ByteBuf out) throws IOException;
+
+    /**
+     * 解压in的全部可读数据，写入out
+     * @param in    压缩数据
+     * @param out   输出buffer，容量为原始长度
+     * @throws IOException
+     */
+    void decompress(ByteBuf in, ByteBuf out) throws IOException;
+
+}
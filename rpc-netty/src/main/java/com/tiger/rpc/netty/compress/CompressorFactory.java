@@ -0,0 +1,56 @@
+package com.tiger.rpc.netty.compress;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * @ClassName: CompressorFactory.java
+ *
+ * @Description: 压缩注册表：内置snappy、gzip
+ *              帧头只有2个标记位用于压缩编号，不提供扩展
+ *
+ * @Author: Tiger
+ *
+ * @Date: 2021/7/10
+ */
+public final class CompressorFactory {
+
+    /**
+     * 编号 <---> 压缩，编号0为不压缩
+     */
+    private static final Compressor[] COMPRESSORS = new Compressor[4];
+
+    static {
+        COMPRESSORS[SnappyCompressor.ID] = new SnappyCompressor();
+        COMPRESSORS[GzipCompressor.ID] = new GzipCompressor();
+    }
+
+    private CompressorFactory() {
+    }
+
+    /**
+     * 根据编号获取
+     * @param id
+     * @return 不存在或为0时返回null
+     */
+    public static Compressor getById(byte id) {
+        return id > 0 && id < COMPRESSORS.length ? COMPRESSORS[id] : null;
+    }
+
+    /**
+     * 根据名称获取
+     * @param name  为空或者"none"时不压缩
+     * @return 不压缩时返回null
+     * @throws IllegalArgumentException 名称不存在
+     */
+    public static Compressor getByName(String name) {
+        if (StringUtils.isBlank(name) || "none".equalsIgnoreCase(name.trim())) {
+            return null;
+        }
+        for (Compressor compressor : COMPRESSORS) {
+            if (compressor != null && compressor.getName().equalsIgnoreCase(name.trim())) {
+                return compressor;
+            }
+        }
+        throw new IllegalArgumentException("Unknown compression: " + name);
+    }
+}
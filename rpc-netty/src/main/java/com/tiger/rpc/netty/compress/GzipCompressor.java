@@ -0,0 +1,65 @@
+package com.tiger.rpc.netty.compress;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * @ClassName: GzipCompressor.java
+ *
+ * @Description: gzip压缩(jdk实现)，压缩率高于snappy但更耗cpu，适合带宽受限的跨机房链路
+ *              不在io线程上执行，只在调用线程(业务线程)上压缩
+ *
+ * @Author: Tiger
+ *
+ * @Date: 2021/7/10
+ */
+public class GzipCompressor implements Compressor {
+
+    public static final byte ID = 2;
+
+    public static final String NAME = "gzip";
+
+    /**
+     * 流缓冲大小
+     */
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean isIoThreadSafe() {
+        return false;
+    }
+
+    @Override
+    public void compress(ByteBuf in, ByteBuf out) throws IOException {
+        try (GZIPOutputStream gzip = new GZIPOutputStream(new ByteBufOutputStream(out), BUFFER_SIZE)) {
+            in.readBytes(gzip, in.readableBytes());
+        }
+    }
+
+    @Override
+    public void decompress(ByteBuf in, ByteBuf out) throws IOException {
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteBufInputStream(in), BUFFER_SIZE)) {
+            //按输出容量(原始长度)读取，超出的数据视为损坏
+            while (out.isWritable() && out.writeBytes(gzip, out.writableBytes()) > 0) {
+            }
+            if (gzip.read() >= 0) {
+                throw new IOException("Decompressed data exceeds the original length");
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.tiger.rpc.netty.compress;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.compression.Snappy;
+
+/**
+ * @ClassName: SnappyCompressor.java
+ *
+ * @Description: snappy压缩(netty内置实现，无额外依赖)，压缩/解压速度快，适合在io线程上执行
+ *              按32K分块压缩：chunkLength(4) | snappy块 | chunkLength(4) | snappy块 ...
+ *
+ * @Author: Tiger
+ *
+ * @Date: 2021/7/10
+ */
+public class SnappyCompressor implements Compressor {
+
+    public static final byte ID = 1;
+
+    public static final String NAME = "snappy";
+
+    /**
+     * 分块大小：netty snappy的哈希表以short记录块内位置，块不能超过32K
+     */
+    private static final int CHUNK_SIZE = 32 * 1024;
+
+    /**
+     * snappy编解码有状态，每个线程一个实例
+     */
+    private static final ThreadLocal<Snappy> SNAPPY = ThreadLocal.withInitial(Snappy::new);
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean isIoThreadSafe() {
+        return true;
+    }
+
+    @Override
+    public void compress(ByteBuf in, ByteBuf out) {
+        Snappy snappy = SNAPPY.get();
+        while (in.isReadable()) {
+            int length = Math.min(in.readableBytes(), CHUNK_SIZE);
+            int lengthIndex = out.writerIndex();
+            out.writeInt(0);
+            snappy.reset();
+            //每块单独切片：netty snappy编码后把readerIndex设置为length(绝对位置)，不能在同一个buffer上连续编码
+            snappy.encode(in.readSlice(length), out, length);
+            out.setInt(lengthIndex, out.writerIndex() - lengthIndex - 4);
+        }
+    }
+
+    @Override
+    public void decompress(ByteBuf in, ByteBuf out) {
+        Snappy snappy = SNAPPY.get();
+        while (in.isReadable()) {
+            int length = in.readInt();
+            snappy.reset();
+            snappy.decode(in.readSlice(length), out);
+        }
+    }
+}
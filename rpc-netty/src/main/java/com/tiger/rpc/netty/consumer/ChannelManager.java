@@ -0,0 +1,427 @@
+package com.tiger.rpc.netty.consumer;
+
+import com.tiger.rpc.common.utils.Constants;
+import com.tiger.rpc.netty.enums.ChannelSelectEnum;
+import io.netty.channel.ChannelFuture;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.net.SocketException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * @ClassName: ChannelManager.java
+ *
+ * @Description: 多路复用的连接管理，替代连接池
+ *              1.每个provider(host:port)保持固定数量的长连接，同一连接上并发多个请求，使用后无需归还
+ *              2.按轮询或最少在途调用选择连接，选择过程无锁
+ *              3.连接断开后在后台按退避时间重连，调用方不等待：无可用连接时抛出SocketException，由重试选择其他provider
+ *              4.首次使用provider时后台建立所有连接，调用方最多等待建连超时与调用剩余时间的较小值；provider上线时可预先后台建立所有连接
+ *              5.provider下线时，等待在途调用结束后关闭连接
+ *              6.建连异步进行，建连超时与调用超时分开，不可达的provider不阻塞其他provider的重连与排空
+ *
+ * @Author: Tiger
+ *
+ * @Date: 2021/6/22
+ */
+@Slf4j
+public class ChannelManager implements Closeable {
+
+    /**
+     * 默认每个provider的连接数
+     */
+    public static final int DEFAULT_CONNECTIONS = 2;
+
+    /**
+     * 默认连接超时(毫秒)
+     */
+    public static final int DEFAULT_TIMEOUT = 60000;
+
+    /**
+     * 默认建连超时(毫秒)
+     */
+    public static final int DEFAULT_CONNECT_TIMEOUT = NSocket.DEFAULT_CONNECT_TIMEOUT;
+
+    /**
+     * 重连最小退避时间(毫秒)
+     */
+    private static final long MIN_BACKOFF_MILLIS = 100;
+
+    /**
+     * 重连最大退避时间(毫秒)
+     */
+    private static final long MAX_BACKOFF_MILLIS = 5000;
+
+    /**
+     * 每个provider的连接数
+     */
+    @Getter
+    private final int connections;
+
+    /**
+     * 调用超时(毫秒)
+     */
+    @Getter
+    private final Integer timeout;
+
+    /**
+     * 建连超时(毫秒)
+     */
+    @Getter
+    private final int connectTimeout;
+
+    /**
+     * 连接选择方式
+     */
+    @Getter
+    private final ChannelSelectEnum select;
+
+    /**
+     * provider(host:port) <---> 连接组
+     */
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    /**
+     * 后台重连/排空线程，只发起异步建连，不阻塞
+     */
+    private final ScheduledExecutorService reconnector;
+
+    private volatile boolean closed = false;
+
+    public ChannelManager() {
+        this(DEFAULT_CONNECTIONS, DEFAULT_TIMEOUT, ChannelSelectEnum.ROUND_ROBIN);
+    }
+
+    /**
+     * @param connections   每个provider的连接数
+     * @param timeout   调用超时(毫秒)
+     * @param select    连接选择方式，为空时轮询
+     */
+    public ChannelManager(int connections, Integer timeout, ChannelSelectEnum select) {
+        this(connections, timeout, DEFAULT_CONNECT_TIMEOUT, select);
+    }
+
+    /**
+     * @param connections   每个provider的连接数
+     * @param timeout   调用超时(毫秒)
+     * @param connectTimeout    建连超时(毫秒)，不超过调用超时
+     * @param select    连接选择方式，为空时轮询
+     */
+    public ChannelManager(int connections, Integer timeout, int connectTimeout, ChannelSelectEnum select) {
+        this.connections = connections > 0 ? connections : DEFAULT_CONNECTIONS;
+        this.timeout = timeout;
+        this.connectTimeout = connectTimeout > 0 ? connectTimeout : DEFAULT_CONNECT_TIMEOUT;
+        this.select = select == null ? ChannelSelectEnum.ROUND_ROBIN : select;
+        this.reconnector = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("nettyChannelReconnect", true));
+    }
+
+    /**
+     * 获取provider的可用连接，不需要归还；首次使用时最多等待建连超时
+     * @param key   host:port
+     * @return
+     * @throws Exception    无可用连接
+     */
+    public NSocket acquire(String key) throws Exception {
+        return acquire(key, 0);
+    }
+
+    /**
+     * 获取provider的可用连接，不需要归还
+     * @param key   host:port
+     * @param waitMillis    首次使用时最多等待的时间(毫秒)，不超过建连超时，为0时等待建连超时
+     * @return
+     * @throws Exception    无可用连接
+     */
+    public NSocket acquire(String key, long waitMillis) throws Exception {
+        if (closed) {
+            throw new IllegalStateException("Channel manager closed");
+        }
+        Endpoint endpoint = endpoints.get(key);
+        if (endpoint == null) {
+            endpoint = endpoints.computeIfAbsent(key, Endpoint::new);
+        }
+        NSocket socket = endpoint.select();
+        return socket != null ? socket : endpoint.connectFirst(waitMillis > 0 ? Math.min(waitMillis, connectTimeout) : connectTimeout);
+    }
+
+    /**
+     * 预热：后台建立provider的所有连接，不阻塞调用方
+     * @param key   host:port
+     */
+    public void warmUp(String key) {
+        if (closed) {
+            return;
+        }
+        Endpoint endpoint = endpoints.get(key);
+        if (endpoint == null) {
+            endpoint = endpoints.computeIfAbsent(key, Endpoint::new);
+        }
+        endpoint.start();
+    }
+
+    /**
+     * 移除provider：不再选择其连接，在途调用结束(或超过排空时间)后关闭连接
+     * @param key   host:port
+     */
+    public void remove(String key) {
+        Endpoint endpoint = endpoints.remove(key);
+        if (endpoint != null) {
+            long drainMillis = timeout != null && timeout > 0 ? timeout : DEFAULT_TIMEOUT;
+            endpoint.drain(System.currentTimeMillis() + drainMillis);
+        }
+    }
+
+    /**
+     * 关闭所有连接
+     */
+    @Override
+    public void close() {
+        closed = true;
+        reconnector.shutdownNow();
+        endpoints.values().forEach(Endpoint::close);
+        endpoints.clear();
+    }
+
+    /**
+     * 单个provider的连接组
+     */
+    private final class Endpoint {
+
+        private final String key;
+
+        /**
+         * 连接，数组及元素创建后不变，断开后原对象重新打开
+         */
+        private final NSocket[] sockets;
+
+        /**
+         * 轮询游标
+         */
+        private final AtomicInteger cursor = new AtomicInteger();
+
+        /**
+         * 重连中标记：1为已安排重连或建连中
+         */
+        private final AtomicIntegerArray reconnecting;
+
+        /**
+         * 是否已开始建立连接
+         */
+        private volatile boolean started = false;
+
+        /**
+         * 首轮建连结果：任一连接成功或全部失败时完成，冷启动的调用方据此等待
+         */
+        private final CompletableFuture<Void> firstRound = new CompletableFuture<>();
+
+        /**
+         * 首轮建连失败数
+         */
+        private final AtomicInteger firstRoundFailures = new AtomicInteger();
+
+        private volatile boolean closed = false;
+
+        Endpoint(String key) {
+            this.key = key;
+            String[] str = key.split(Constants.HOST_PORT_SEPARATOR);
+            String host = str[0];
+            int port = Integer.parseInt(str[1]);
+            this.sockets = new NSocket[connections];
+            for (int i = 0; i < connections; i++) {
+                NSocket socket = timeout != null && timeout > 0 ? new NSocket(host, port, timeout) : new NSocket(host, port);
+                //断开后由后台重连，调用线程不建连
+                sockets[i] = socket.setConnectTimeout(connectTimeout).setAutoOpen(false);
+            }
+            this.reconnecting = new AtomicIntegerArray(connections);
+        }
+
+        /**
+         * 选择已打开的连接，断开的连接安排后台重连
+         *          优先选择可写的连接，都不可写时返回已打开的连接，由发送时按背压方式处理
+         * @return  无已打开的连接时返回null
+         */
+        NSocket select() {
+            int length = sockets.length;
+            int start = cursor.getAndIncrement() & Integer.MAX_VALUE;
+            NSocket selected = null;
+            NSocket unwritable = null;
+            int minPending = Integer.MAX_VALUE;
+            for (int i = 0; i < length; i++) {
+                int index = (start + i) % length;
+                NSocket socket = sockets[index];
+                if (!socket.isOpen()) {
+                    if (started) {
+                        scheduleReconnect(index, MIN_BACKOFF_MILLIS);
+                    }
+                    continue;
+                }
+                if (!socket.isWritable()) {
+                    if (unwritable == null) {
+                        unwritable = socket;
+                    }
+                    continue;
+                }
+                if (select == ChannelSelectEnum.ROUND_ROBIN) {
+                    return socket;
+                }
+                int pending = socket.getPendingCount();
+                if (pending < minPending) {
+                    minPending = pending;
+                    selected = socket;
+                }
+            }
+            return selected != null ? selected : unwritable;
+        }
+
+        /**
+         * 无可用连接时的处理
+         *          1.冷启动(首轮建连未完成)：后台建立所有连接，调用方最多等待waitMillis
+         *          2.已连接过或首轮建连已失败(后台重连中)：直接失败，不阻塞调用方
+         * @param waitMillis    最多等待时间(毫秒)
+         * @return
+         * @throws Exception
+         */
+        NSocket connectFirst(long waitMillis) throws Exception {
+            start();
+            if (!firstRound.isDone() && waitMillis > 0) {
+                try {
+                    firstRound.get(waitMillis, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    //等待超时，由重试选择其他provider
+                }
+            }
+            NSocket socket = select();
+            if (socket != null) {
+                return socket;
+            }
+            throw new SocketException(String.format("No connected channel to provider[%s]", key));
+        }
+
+        /**
+         * 开始后台建立所有连接
+         */
+        void start() {
+            if (started) {
+                return;
+            }
+            synchronized (this) {
+                if (started) {
+                    return;
+                }
+                started = true;
+            }
+            for (int i = 0; i < sockets.length; i++) {
+                scheduleReconnect(i, 0);
+            }
+        }
+
+        /**
+         * 安排后台重连，同一连接只安排一次
+         * @param index
+         * @param backoff   退避时间(毫秒)
+         */
+        void scheduleReconnect(int index, long backoff) {
+            if (closed || ChannelManager.this.closed || !reconnecting.compareAndSet(index, 0, 1)) {
+                return;
+            }
+            submit(index, backoff);
+        }
+
+        private void submit(int index, long backoff) {
+            try {
+                reconnector.schedule(() -> connect(index, backoff), backoff, TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                //管理器已关闭
+                reconnecting.set(index, 0);
+            }
+        }
+
+        /**
+         * 异步建连，不阻塞重连线程
+         *          1.成功：新channel关闭时安排重连(每个channel只注册一次)
+         *          2.失败：退避时间加倍后再次建连
+         * @param index
+         * @param backoff
+         */
+        private void connect(int index, long backoff) {
+            NSocket socket = sockets[index];
+            if (closed || socket.isOpen()) {
+                reconnecting.set(index, 0);
+                return;
+            }
+            ChannelFuture future;
+            try {
+                future = socket.connect();
+            } catch (Exception e) {
+                //传输资源已释放
+                log.warn("Connect to provider[{}] error: {}", key, e.getMessage());
+                reconnecting.set(index, 0);
+                return;
+            }
+            future.addListener(f -> {
+                if (f.isSuccess()) {
+                    log.debug("Channel[{}] to provider[{}] connected", index, key);
+                    reconnecting.set(index, 0);
+                    firstRound.complete(null);
+                    future.channel().closeFuture().addListener(cf -> scheduleReconnect(index, MIN_BACKOFF_MILLIS));
+                    if (this.closed) {
+                        socket.close();
+                    }
+                    return;
+                }
+                log.warn("Connect to provider[{}] error: {}", key, f.cause() == null ? "unknown" : f.cause().getMessage());
+                if (firstRoundFailures.incrementAndGet() >= sockets.length) {
+                    firstRound.complete(null);
+                }
+                if (closed) {
+                    reconnecting.set(index, 0);
+                } else {
+                    submit(index, Math.min(Math.max(backoff, MIN_BACKOFF_MILLIS) * 2, MAX_BACKOFF_MILLIS));
+                }
+            });
+        }
+
+        /**
+         * 排空：停止重连，关闭没有在途调用的连接，到达截止时间后关闭所有连接
+         * @param deadline  截止时间
+         */
+        void drain(long deadline) {
+            closed = true;
+            boolean drained = true;
+            for (NSocket socket : sockets) {
+                if (socket.getPendingCount() == 0 || System.currentTimeMillis() >= deadline) {
+                    socket.close();
+                } else {
+                    drained = false;
+                }
+            }
+            if (drained) {
+                log.debug("Channels to provider[{}] drained", key);
+                return;
+            }
+            try {
+                reconnector.schedule(() -> drain(deadline), MIN_BACKOFF_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                //管理器已关闭
+                close();
+            }
+        }
+
+        void close() {
+            closed = true;
+            for (NSocket socket : sockets) {
+                socket.close();
+            }
+        }
+    }
+}
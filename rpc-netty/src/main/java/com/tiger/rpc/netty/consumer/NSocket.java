@@ -1,22 +1,25 @@
 package com.tiger.rpc.netty.consumer;
 
-import com.tiger.rpc.common.enums.ProtocolTypeEnum;
-import com.tiger.rpc.netty.code.RpcDecoder;
+import com.tiger.rpc.common.enums.ServiceCodeEnum;
+import com.tiger.rpc.common.exception.ServiceException;
 import com.tiger.rpc.netty.code.RpcEncoder;
 import com.tiger.rpc.netty.consumer.handler.NettyClientHandler;
+import com.tiger.rpc.netty.enums.BackpressureModeEnum;
 import com.tiger.rpc.netty.packet.RequestPacket;
-import com.tiger.rpc.netty.packet.ResponsePacket;
 import com.tiger.rpc.netty.packet.RpcPacket;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
 import lombok.Getter;
 import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
 
 import java.io.Closeable;
+import java.lang.reflect.Method;
 import java.net.SocketAddress;
+import java.net.SocketException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 
 /**
@@ -28,17 +31,20 @@ import java.util.concurrent.ExecutionException;
  *
  * @Date: 2021/4/4
  */
+@Slf4j
 @ToString
 public class NSocket implements Closeable {
 
     /**
      * Socket远程地址
      */
+    @Getter
     private final String host;
 
     /**
      * Socket远程端口
      */
+    @Getter
     private final int port;
 
     /**
@@ -47,26 +53,71 @@ public class NSocket implements Closeable {
     @Getter
     private Integer timeout;
 
+    /**
+     * 默认建连超时(毫秒)，与调用超时分开，避免不可达的provider长时间占用建连
+     */
+    public static final int DEFAULT_CONNECT_TIMEOUT = 3000;
+
+    /**
+     * 建连超时(毫秒)，不超过socket超时
+     */
+    @Getter
+    private int connectTimeout;
+
+    /**
+     * 是否在写入时自动打开：由连接管理后台建连的连接为false，断开时写入直接失败，不在调用线程建连
+     */
+    private volatile boolean autoOpen = true;
+
     /**
      * netty channel，不对外暴露
      */
-    private Channel channel;
+    private volatile Channel channel;
+
+    /**
+     * 共享的客户端传输资源(事件线程池)
+     */
+    @ToString.Exclude
+    private final NettyClientTransport transport = NettyClientTransport.getInstance();
 
     /**
-     * 事件线程池
+     * 是否已引用传输资源
      */
-    private EventLoopGroup group;
+    private volatile boolean retained = false;
 
     public NSocket(String host, int port) {
         this.host = host;
         this.port = port;
         this.timeout = 0;
+        this.connectTimeout = DEFAULT_CONNECT_TIMEOUT;
     }
 
     public NSocket(String host, int port , Integer timeout) {
         this.host = host;
         this.port = port;
         this.timeout = timeout;
+        this.connectTimeout = timeout != null && timeout > 0 ? Math.min(timeout, DEFAULT_CONNECT_TIMEOUT) : DEFAULT_CONNECT_TIMEOUT;
+    }
+
+    /**
+     * 设置建连超时(毫秒)，不超过socket超时
+     * @param connectTimeout
+     * @return
+     */
+    public NSocket setConnectTimeout(int connectTimeout) {
+        int limit = timeout != null && timeout > 0 ? timeout : Integer.MAX_VALUE;
+        this.connectTimeout = connectTimeout > 0 ? Math.min(connectTimeout, limit) : DEFAULT_CONNECT_TIMEOUT;
+        return this;
+    }
+
+    /**
+     * 设置是否在写入时自动打开，由连接管理调用
+     * @param autoOpen
+     * @return
+     */
+    NSocket setAutoOpen(boolean autoOpen) {
+        this.autoOpen = autoOpen;
+        return this;
     }
 
     /**
@@ -74,60 +125,126 @@ public class NSocket implements Closeable {
      * @return
      * @throws InterruptedException
      */
-    public Channel open() throws InterruptedException {
-        Bootstrap bootstrap = new Bootstrap();
-        //创建事件线程池，固定2个线程处理该channel，防止线程膨胀
-        group = new NioEventLoopGroup(2);
-        bootstrap.group(group).channel(NioSocketChannel.class)
-                .handler(new ChannelInitializer<SocketChannel>() {
-                    @Override
-                    public void initChannel(SocketChannel channel) throws Exception {
-                        //解码/编码与服务端顺序相反，最后设置客户端处理器
-                        channel.pipeline()
-                                //编码请求数据包
-                                .addLast(new RpcEncoder<RequestPacket>(RequestPacket.class))
-                                //解码响应数据包
-                                .addLast(new RpcDecoder<ResponsePacket>(ResponsePacket.class, ProtocolTypeEnum.NETTY))
-                                //客户端处理器
-                                .addLast(new NettyClientHandler());
-                    }
-                }).option(ChannelOption.TCP_NODELAY, true);
+    public synchronized Channel open() throws InterruptedException {
+        if (!retained) {
+            //引用共享事件线程池，不再为每个连接创建线程
+            transport.retain();
+            retained = true;
+        }
+        Bootstrap bootstrap = transport.bootstrap();
+        //超时连接(如果不设置超时，连接会一直占用本地线程，端口，连接客户端一多，会导致本地端口用尽及CPU压力)
+        bootstrap.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeout);
         if(timeout != null && timeout > 0) {
-            //超时连接(如果不设置超时，连接会一直占用本地线程，端口，连接客户端一多，会导致本地端口用尽及CPU压力)
-            bootstrap.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, timeout).option(ChannelOption.SO_TIMEOUT, timeout);
-            this.channel = bootstrap.connect(host, port).awaitUninterruptibly().channel();
-        } else {
-            //同步连接
-            this.channel = bootstrap.connect(host, port).sync().channel();
+            bootstrap.option(ChannelOption.SO_TIMEOUT, timeout);
         }
+        this.channel = bootstrap.connect(host, port).awaitUninterruptibly().channel();
         return channel;
     }
 
+    /**
+     * 异步打开socket，不阻塞调用线程，建连成功后设置channel
+     *          建连完成前socket已关闭时，关闭新建的channel
+     * @return  建连future
+     */
+    public synchronized ChannelFuture connect() {
+        if (!retained) {
+            transport.retain();
+            retained = true;
+        }
+        Bootstrap bootstrap = transport.bootstrap();
+        bootstrap.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeout);
+        ChannelFuture future = bootstrap.connect(host, port);
+        future.addListener(f -> {
+            if (!f.isSuccess()) {
+                return;
+            }
+            this.channel = future.channel();
+            if (!retained) {
+                //建连期间已关闭
+                future.channel().close();
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 未打开时打开socket，多线程共用同一个socket时只打开一次
+     * @return
+     * @throws InterruptedException
+     * @throws SocketException   连接管理的连接已断开
+     */
+    public Channel ensureOpen() throws InterruptedException, SocketException {
+        Channel current = this.channel;
+        if (current != null && current.isOpen()) {
+            return current;
+        }
+        if (!autoOpen) {
+            //由连接管理后台重连，调用方不等待
+            throw new SocketException(String.format("Channel to provider[%s:%d] closed", host, port));
+        }
+        synchronized (this) {
+            return isOpen() ? channel : open();
+        }
+    }
+
+    /**
+     * 在途调用数，未打开时为0
+     * @return
+     */
+    public int getPendingCount() {
+        Channel current = this.channel;
+        NettyClientHandler handler = current == null ? null : current.pipeline().get(NettyClientHandler.class);
+        return handler == null ? 0 : handler.getRegistry().pendingCount();
+    }
+
+    /**
+     * 最后读写时间(毫秒)，未打开时为0
+     * @return
+     */
+    public long getLastActivity() {
+        Channel current = this.channel;
+        NettyClientHandler handler = current == null ? null : current.pipeline().get(NettyClientHandler.class);
+        return handler == null ? 0 : handler.getLastActivity();
+    }
+
+    /**
+     * 是否可写：出站缓冲未超过高水位
+     * @return
+     */
+    public boolean isWritable() {
+        Channel current = this.channel;
+        return current != null && current.isWritable();
+    }
+
     /**
      * check是否打开连接
      * @return
      */
     public boolean isOpen() {
-        if (channel == null || group == null || group.isShutdown()) {
-            //channel为null or group为null or group关闭，则返回null
+        Channel current = this.channel;
+        if (current == null || !retained) {
+            //channel为null or 未引用传输资源，则返回false；channel打开时其事件线程池必然可用，无需再检查传输资源
             return false;
         }
-        return channel.isOpen();
+        return current.isOpen();
     }
 
     /**
-     * 把channel和group都关闭，设置为null加速回收对象
+     * 关闭channel，释放共享传输资源的引用，设置为null加速回收对象
      */
     @Override
-    public void close(){
-        if (channel != null && channel.isActive()) {
+    public synchronized void close(){
+        //先标记未引用，异步建连完成时据此关闭新建的channel
+        boolean release = retained;
+        retained = false;
+        Channel current = channel;
+        channel = null;
+        if (current != null && current.isActive()) {
 //            channel.closeFuture();
-            channel.close();
-            channel = null;
+            current.close();
         }
-        if (group != null) {
-            group.shutdownGracefully();
-            group = null;
+        if (release) {
+            transport.release();
         }
     }
 
@@ -136,23 +253,140 @@ public class NSocket implements Closeable {
      * @return
      */
     public SocketAddress getLocalSocketAddress() {
-        if (channel != null){
-            return channel.localAddress();
+        Channel current = this.channel;
+        if (current != null){
+            return current.localAddress();
         }
         return null;
     }
 
     /**
-     * 同步写入，线程阻塞到响应结果
+     * 同步写入，线程阻塞到写入完成
      * @param object
      * @throws InterruptedException
+     * @throws SocketException   连接管理的连接已断开
      * @throws ExecutionException
      */
-    public <T extends RpcPacket> void writeAndFlush(T object) throws InterruptedException, ExecutionException {
-        if (channel == null || !channel.isOpen()) {
-            this.open();
+    public <T extends RpcPacket> void writeAndFlush(T object) throws InterruptedException, SocketException, ExecutionException {
+        Channel channel = ensureOpen();
+        channel.writeAndFlush(RpcEncoder.precompress(channel, object)).sync();
+    }
+
+    /**
+     * 注册调用并异步写入请求：在同一个channel上分配请求编号，不等待写入完成
+     *          写入由io线程合并刷出，写入失败时future异常结束并移除等待
+     *          channel不可写时按背压方式等待或抛出服务繁忙异常
+     * @param packet    请求包
+     * @param method    接口方法，按连接的方法字典填充方法描述
+     * @return  调用结果future
+     * @throws InterruptedException
+     * @throws SocketException   连接管理的连接已断开
+     */
+    public RpcFuture send(RequestPacket packet, Method method) throws InterruptedException, SocketException {
+        Channel channel = ensureOpen();
+        NettyClientHandler handler = prepare(channel, packet, method);
+        RpcFuture future = handler.getRegistry().newCall();
+        future.bind(channel);
+        packet.setRequestId(future.getRequestId());
+        channel.writeAndFlush(RpcEncoder.precompress(channel, packet)).addListener(f -> {
+            if (!f.isSuccess()) {
+                //写入失败，结束调用
+                future.completeExceptionally(f.cause());
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 单向写入请求：分配请求编号但不注册调用，写入后立即返回，写入失败只记录日志
+     * @param packet    请求包
+     * @param method    接口方法，按连接的方法字典填充方法描述
+     * @throws InterruptedException
+     * @throws SocketException   连接管理的连接已断开
+     */
+    public void sendOneWay(RequestPacket packet, Method method) throws InterruptedException, SocketException {
+        Channel channel = ensureOpen();
+        NettyClientHandler handler = prepare(channel, packet, method);
+        packet.setOneWay(true);
+        packet.setRequestId(handler.getRegistry().nextRequestId());
+        channel.writeAndFlush(RpcEncoder.precompress(channel, packet)).addListener(f -> {
+            if (!f.isSuccess()) {
+                log.warn("One-way request[{}] to {}:{} failed", packet.getRequestId(), host, port, f.cause());
+            }
+        });
+    }
+
+    /**
+     * 批量写入请求：加入连接的请求合并，时间窗口内的请求合并为一帧发送
+     * @param packet    请求包
+     * @param method    接口方法，按连接的方法字典填充方法描述
+     * @return  该请求的结果future，批量调用超时时异常结束
+     * @throws InterruptedException
+     * @throws SocketException   连接管理的连接已断开
+     */
+    public CompletableFuture<Object> sendBatched(RequestPacket packet, Method method) throws InterruptedException, SocketException {
+        Channel channel = ensureOpen();
+        NettyClientHandler handler = prepare(channel, packet, method);
+        return handler.batcher(channel, timeout == null ? 0 : timeout).add(packet);
+    }
+
+    /**
+     * 流式请求：注册迭代器并写入请求，随后授予provider初始额度
+     *          迭代器读取一块补充一个额度，未读完时关闭迭代器取消流
+     * @param packet    请求包
+     * @param method    接口方法，按连接的方法字典填充方法描述
+     * @return  惰性迭代器
+     * @throws InterruptedException
+     * @throws SocketException   连接管理的连接已断开
+     */
+    public StreamIterator sendStream(RequestPacket packet, Method method) throws InterruptedException, SocketException {
+        Channel channel = ensureOpen();
+        NettyClientHandler handler = prepare(channel, packet, method);
+        long requestId = handler.getRegistry().nextRequestId();
+        packet.setRequestId(requestId);
+        StreamIterator stream = new StreamIterator(requestId, channel, handler.getStreams(), transport.getStreamWindow(),
+                timeout == null ? 0 : timeout);
+        handler.getStreams().put(requestId, stream);
+        channel.writeAndFlush(RpcEncoder.precompress(channel, packet)).addListener(f -> {
+            if (!f.isSuccess()) {
+                stream.fail(f.cause());
+            }
+        });
+        stream.start();
+        return stream;
+    }
+
+    /**
+     * 写入前准备：检查可写(背压)，填充方法描述，记录写入活动
+     * @param channel
+     * @param packet
+     * @param method
+     * @return  客户端处理器
+     * @throws InterruptedException
+     */
+    private NettyClientHandler prepare(Channel channel, RequestPacket packet, Method method) throws InterruptedException {
+        NettyClientHandler handler = channel.pipeline().get(NettyClientHandler.class);
+        if (!channel.isWritable()) {
+            //出站缓冲超过高水位，按背压方式等待可写或立即失败，不再堆积请求
+            boolean wait = transport.getBackpressureMode() == BackpressureModeEnum.WAIT;
+            if (!wait || !handler.awaitWritable(channel, timeout == null ? 0 : timeout)) {
+                throw new ServiceException(ServiceCodeEnum.SERVICE_BUSY.getCode(),
+                        String.format(ServiceCodeEnum.SERVICE_BUSY.getValue(), host + ":" + port));
+            }
         }
-        channel.writeAndFlush(object).sync();
+        handler.describe(packet, method);
+        handler.touch();
+        return handler;
+    }
+
+    /**
+     * 在共享时间轮上添加超时任务，用于调用的超时处理
+     * @param task  任务
+     * @param delayMillis   延迟时间(毫秒)
+     * @return
+     */
+    public Timeout newTimeout(TimerTask task, long delayMillis) {
+        return transport.newTimeout(task, delayMillis);
     }
 
 }
@@ -0,0 +1,46 @@
+package com.tiger.rpc.netty.consumer;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * @ClassName: NettyAsyncContext.java
+ *
+ * @Description: 异步调用上下文，保存当前线程最近一次异步代理调用的future
+ *              用法：
+ *                  userService.getUser(id);
+ *                  CompletableFuture<User> future = NettyAsyncContext.getFuture();
+ *
+ * @Author: Tiger
+ *
+ * @Date: 2021/6/2
+ */
+public class NettyAsyncContext {
+
+    /**
+     * 当前线程最近一次异步调用的future
+     */
+    private static final ThreadLocal<CompletableFuture<?>> FUTURE = new ThreadLocal<>();
+
+    private NettyAsyncContext() {
+    }
+
+    /**
+     * 获取并清除当前线程最近一次异步调用的future
+     * @param <T>   结果类型
+     * @return
+     */
+    public static <T> CompletableFuture<T> getFuture() {
+        CompletableFuture<?> future = FUTURE.get();
+        FUTURE.remove();
+        return (CompletableFuture<T>) future;
+    }
+
+    /**
+     * 设置当前线程的异步调用future，由异步代理调用
+     * @param future
+     */
+    public static void setFuture(CompletableFuture<?> future) {
+        FUTURE.set(future);
+    }
+
+}
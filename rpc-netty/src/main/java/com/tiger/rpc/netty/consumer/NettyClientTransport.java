@@ -0,0 +1,329 @@
+package com.tiger.rpc.netty.consumer;
+
+import com.tiger.rpc.netty.code.RpcDecoder;
+import com.tiger.rpc.netty.code.RpcEncoder;
+import com.tiger.rpc.netty.consumer.handler.NettyClientHandler;
+import com.tiger.rpc.netty.enums.BackpressureModeEnum;
+import com.tiger.rpc.netty.enums.TransportTypeEnum;
+import com.tiger.rpc.netty.packet.RequestPacket;
+import com.tiger.rpc.netty.packet.ResponsePacket;
+import com.tiger.rpc.netty.utils.TransportUtils;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @ClassName: NettyClientTransport.java
+ *
+ * @Description: 客户端传输资源，进程内共享
+ *              1.所有NSocket共用一个事件线程池和Bootstrap模板，避免每个连接创建线程
+ *              2.NSocket打开时引用计数加1，关闭时减1，计数为0时关闭事件线程池
+ *              3.所有调用的超时共用一个时间轮，逐个调用过期
+ *              4.空闲时发送心跳，及时发现被防火墙静默丢弃的连接
+ *              5.合并flush，突发请求批量写出
+ *              6.出站缓冲超过高水位时按背压方式等待或拒绝新请求
+ *              7.流式调用按额度(块数)接收数据，consumer读取慢时provider暂停
+ *
+ * @Author: Tiger
+ *
+ * @Date: 2021/6/5
+ */
+@Slf4j
+public final class NettyClientTransport {
+
+    /**
+     * 合并flush的最大次数，达到后立即刷出
+     */
+    public static final int FLUSH_CONSOLIDATION_LIMIT = 256;
+
+    /**
+     * 进程内共享实例
+     */
+    private static final NettyClientTransport INSTANCE = new NettyClientTransport();
+
+    /**
+     * io线程数，0时使用netty默认值(cpu核数 * 2)
+     */
+    private int ioThreads = 0;
+
+    /**
+     * 传输类型，默认自动选择：epoll可用时使用epoll，否则使用nio
+     */
+    private TransportTypeEnum transportType = TransportTypeEnum.AUTO;
+
+    /**
+     * 默认心跳间隔(秒)
+     */
+    public static final int DEFAULT_HEARTBEAT_SECONDS = 15;
+
+    /**
+     * 心跳间隔(秒)：写空闲时发送ping，下一个间隔内未收到任何数据则连接不健康并关闭，0为不发送心跳
+     */
+    private int heartbeatSeconds = DEFAULT_HEARTBEAT_SECONDS;
+
+    /**
+     * 出站缓冲水位
+     */
+    private WriteBufferWaterMark writeBufferWaterMark = TransportUtils.DEFAULT_WRITE_BUFFER_WATER_MARK;
+
+    /**
+     * 背压方式：channel不可写时新请求等待或立即失败
+     */
+    private BackpressureModeEnum backpressureMode = BackpressureModeEnum.WAIT;
+
+    /**
+     * 批量调用：每批最大请求数
+     */
+    private int batchMaxSize = 64;
+
+    /**
+     * 批量调用：时间窗口(微秒)，窗口内的请求合并发送
+     */
+    private long batchWindowMicros = 200;
+
+    /**
+     * 批量调用：provider是否并行执行
+     */
+    private boolean batchParallel = false;
+
+    /**
+     * 流式调用：初始额度(块数)，即consumer最多缓冲的块数
+     */
+    private int streamWindow = 4;
+
+    /**
+     * 共享事件线程池
+     */
+    private EventLoopGroup group;
+
+    /**
+     * Bootstrap模板，使用时clone
+     */
+    private Bootstrap bootstrap;
+
+    /**
+     * 调用超时时间轮，精度10ms
+     */
+    private volatile Timer timer;
+
+    /**
+     * 引用计数
+     */
+    private int refCnt = 0;
+
+    private NettyClientTransport() {
+    }
+
+    public static NettyClientTransport getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 引用传输资源，不存在时创建
+     */
+    public synchronized void retain() {
+        if (group == null) {
+            boolean epoll = TransportUtils.useEpoll(transportType);
+            group = TransportUtils.newEventLoopGroup(epoll, ioThreads, new DefaultThreadFactory("nettyClientWorker", true));
+            bootstrap = new Bootstrap().group(group).channel(TransportUtils.socketChannelClass(epoll))
+                    .handler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        public void initChannel(SocketChannel channel) throws Exception {
+                            if (heartbeatSeconds > 0) {
+                                //读/写空闲检测，驱动心跳，后台发现失效连接
+                                channel.pipeline().addLast(new IdleStateHandler(heartbeatSeconds, heartbeatSeconds, 0));
+                            }
+                            //解码/编码与服务端顺序相反，最后设置客户端处理器
+                            channel.pipeline()
+                                    //合并flush：业务线程并发写入时，多个请求在io线程上一次刷出，减少write系统调用
+                                    .addLast(new FlushConsolidationHandler(FLUSH_CONSOLIDATION_LIMIT, true))
+                                    //编码请求数据包
+                                    .addLast(new RpcEncoder<RequestPacket>(RequestPacket.class))
+                                    //解码响应数据包
+                                    .addLast(new RpcDecoder<ResponsePacket>(ResponsePacket.class))
+                                    //客户端处理器
+                                    .addLast(new NettyClientHandler());
+                        }
+                    }).option(ChannelOption.TCP_NODELAY, true).option(ChannelOption.WRITE_BUFFER_WATER_MARK, writeBufferWaterMark);
+            timer = new HashedWheelTimer(new DefaultThreadFactory("nettyClientTimer", true), 10, TimeUnit.MILLISECONDS, 512);
+            log.debug("Netty client transport created, transport: {}", epoll ? "epoll" : "nio");
+        }
+        refCnt++;
+    }
+
+    /**
+     * 释放传输资源，引用计数为0时关闭事件线程池
+     */
+    public synchronized void release() {
+        if (refCnt <= 0) {
+            return;
+        }
+        refCnt--;
+        if (refCnt == 0 && group != null) {
+            group.shutdownGracefully();
+            group = null;
+            bootstrap = null;
+            timer.stop();
+            timer = null;
+            log.debug("Netty client transport released");
+        }
+    }
+
+    /**
+     * 获取Bootstrap副本，连接可以单独设置参数
+     * @return
+     */
+    public synchronized Bootstrap bootstrap() {
+        if (bootstrap == null) {
+            throw new IllegalStateException("Netty client transport not retained");
+        }
+        return bootstrap.clone();
+    }
+
+    /**
+     * 添加超时任务
+     * @param task  任务
+     * @param delayMillis   延迟时间(毫秒)
+     * @return  传输资源未引用时返回null
+     */
+    public Timeout newTimeout(TimerTask task, long delayMillis) {
+        Timer current = this.timer;
+        if (current == null) {
+            return null;
+        }
+        return current.newTimeout(task, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 传输资源是否可用
+     * @return
+     */
+    public synchronized boolean isActive() {
+        return group != null && !group.isShuttingDown();
+    }
+
+    public synchronized int getIoThreads() {
+        return ioThreads;
+    }
+
+    /**
+     * 设置io线程数，在下一次创建事件线程池时生效
+     * @param ioThreads
+     * @return
+     */
+    public synchronized NettyClientTransport setIoThreads(int ioThreads) {
+        this.ioThreads = ioThreads < 0 ? 0 : ioThreads;
+        return this;
+    }
+
+    public synchronized int getHeartbeatSeconds() {
+        return heartbeatSeconds;
+    }
+
+    /**
+     * 设置心跳间隔(秒)，在下一次创建事件线程池时生效；应小于provider的连接空闲超时
+     * @param heartbeatSeconds    0为不发送心跳
+     * @return
+     */
+    public synchronized NettyClientTransport setHeartbeatSeconds(int heartbeatSeconds) {
+        this.heartbeatSeconds = heartbeatSeconds < 0 ? 0 : heartbeatSeconds;
+        return this;
+    }
+
+    public synchronized WriteBufferWaterMark getWriteBufferWaterMark() {
+        return writeBufferWaterMark;
+    }
+
+    /**
+     * 设置出站缓冲水位，在下一次创建事件线程池时生效
+     * @param low   低水位(字节)
+     * @param high  高水位(字节)
+     * @return
+     */
+    public synchronized NettyClientTransport setWriteBufferWaterMark(int low, int high) {
+        this.writeBufferWaterMark = new WriteBufferWaterMark(low, high);
+        return this;
+    }
+
+    public synchronized BackpressureModeEnum getBackpressureMode() {
+        return backpressureMode;
+    }
+
+    /**
+     * 设置背压方式，立即生效
+     * @param backpressureMode
+     * @return
+     */
+    public synchronized NettyClientTransport setBackpressureMode(BackpressureModeEnum backpressureMode) {
+        this.backpressureMode = backpressureMode == null ? BackpressureModeEnum.WAIT : backpressureMode;
+        return this;
+    }
+
+    public synchronized int getBatchMaxSize() {
+        return batchMaxSize;
+    }
+
+    public synchronized long getBatchWindowMicros() {
+        return batchWindowMicros;
+    }
+
+    public synchronized boolean isBatchParallel() {
+        return batchParallel;
+    }
+
+    /**
+     * 设置批量调用参数，对之后建立的连接生效
+     * @param maxSize   每批最大请求数
+     * @param windowMicros  时间窗口(微秒)
+     * @param parallel  provider是否并行执行
+     * @return
+     */
+    public synchronized NettyClientTransport setBatch(int maxSize, long windowMicros, boolean parallel) {
+        this.batchMaxSize = maxSize < 1 ? 1 : maxSize;
+        this.batchWindowMicros = windowMicros < 0 ? 0 : windowMicros;
+        this.batchParallel = parallel;
+        return this;
+    }
+
+    public synchronized int getStreamWindow() {
+        return streamWindow;
+    }
+
+    /**
+     * 设置流式调用的初始额度，对之后的流式调用生效
+     * @param streamWindow  块数，最小为1
+     * @return
+     */
+    public synchronized NettyClientTransport setStreamWindow(int streamWindow) {
+        this.streamWindow = streamWindow < 1 ? 1 : streamWindow;
+        return this;
+    }
+
+    public synchronized TransportTypeEnum getTransportType() {
+        return transportType;
+    }
+
+    /**
+     * 设置传输类型，在下一次创建事件线程池时生效
+     * @param transportType
+     * @return
+     */
+    public synchronized NettyClientTransport setTransportType(TransportTypeEnum transportType) {
+        this.transportType = transportType == null ? TransportTypeEnum.AUTO : transportType;
+        return this;
+    }
+
+}
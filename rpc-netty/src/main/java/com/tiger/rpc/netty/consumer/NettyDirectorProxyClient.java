@@ -19,7 +19,7 @@ import java.util.List;
 /**
  * @ClassName: NettyDirectorProxyClient.java
  *
- * @Description: consumer直连代理，内部管理有连接池，代理销毁时，清空资源
+ * @Description: consumer直连代理，内部管理有连接池或连接管理，代理销毁时，清空资源
  *
  * @Author: Tiger
  *
@@ -37,6 +37,11 @@ public class NettyDirectorProxyClient {
 	 */
 	private GenericKeyedObjectPool<String, NSocket> pool;
 
+	/**
+	 * 多路复用的连接管理，未传入连接池时使用
+	 */
+	private ChannelManager channelManager;
+
 	/**
 	 * 选择策略
 	 */
@@ -47,6 +52,11 @@ public class NettyDirectorProxyClient {
 	 */
 	private int retry = 0;
 
+	/**
+	 * 调用总超时(毫秒)，包含所有重试及退避等待，默认0不限制
+	 */
+	private int callTimeout;
+
 	/**
 	 * 不基于应用的直连代理执行
 	 * 不做缓存，使用时创建，使用后销毁
@@ -101,6 +111,48 @@ public class NettyDirectorProxyClient {
 	 * @throws ServiceException
 	 */
 	public <T> T getProxy(Class<T> iFaceInterface, List<String> hostPorts, int retry) throws ServiceException {
+		return newProxy(iFaceInterface, hostPorts, retry, false);
+	}
+
+	/**
+	 * 不基于应用的直连批量代理：并发调用同一provider时，同一连接上时间窗口内的调用合并为一帧发送
+	 * 不做缓存，使用时创建，使用后销毁
+	 * @param iFaceInterface	接口方法
+	 * @param host	指定服务器
+	 * @param port	指定端口
+	 * @param <T>
+	 * @return
+	 * @throws ServiceException
+	 */
+	public <T> T getBatchProxy(Class<T> iFaceInterface, String host, Integer port) throws ServiceException {
+		return getBatchProxy(iFaceInterface, Lists.newArrayList(host+Constants.HOST_PORT_SEPARATOR+port));
+	}
+
+	/**
+	 * 不基于应用的直连批量代理：并发调用同一provider时，同一连接上时间窗口内的调用合并为一帧发送
+	 * 连接池借出的连接为独占，合并需使用连接管理(多路复用)
+	 * 不做缓存，使用时创建，使用后销毁
+	 * @param iFaceInterface	接口方法
+	 * @param hostPorts	host:port列表
+	 * @param <T>
+	 * @return
+	 * @throws ServiceException
+	 */
+	public <T> T getBatchProxy(Class<T> iFaceInterface, List<String> hostPorts) throws ServiceException {
+		return newProxy(iFaceInterface, hostPorts, this.retry, true);
+	}
+
+	/**
+	 * 创建直连代理
+	 * @param iFaceInterface	接口方法
+	 * @param hostPorts	host:port列表
+	 * @param retry	重试次数
+	 * @param batch	是否批量调用
+	 * @param <T>
+	 * @return
+	 * @throws ServiceException
+	 */
+	private <T> T newProxy(Class<T> iFaceInterface, List<String> hostPorts, int retry, boolean batch) throws ServiceException {
 		if(iFaceInterface == null){
 			throw new ServiceException(ServiceCodeEnum.MISS_REQUIRED_PARAMETER.getCode(),
 					String.format(ServiceCodeEnum.MISS_REQUIRED_PARAMETER.getValue(), "iFaceInterface"));
@@ -115,17 +167,25 @@ public class NettyDirectorProxyClient {
 			throw new ServiceException(ServiceCodeEnum.ILLEGAL_PARAMETER.getCode(),
 					String.format(ServiceCodeEnum.ILLEGAL_PARAMETER.getValue(), "hostPorts"));
 		}
-		if (pool == null || pool.isClosed()) {
+		NettyDirectorHandler handler;
+		if (pool != null && !pool.isClosed()) {
+			//初始化直连代理(使用socket连接池)
+			handler = new NettyDirectorHandler(pool);
+		} else if (pool == null && channelManager != null) {
+			//初始化直连代理(使用连接管理)
+			handler = new NettyDirectorHandler(channelManager);
+		} else {
 			throw new ServiceException(ServiceCodeEnum.ILLEGAL_PARAMETER.getCode(),
 					String.format(ServiceCodeEnum.ILLEGAL_PARAMETER.getValue(), "pool"));
 		}
-		//初始化直连代理(socket连接池必须传入)
-		NettyDirectorHandler handler = new NettyDirectorHandler(pool);
 		//传入策略
 		handler.setProviderStrategy(providerStrategy);
 		handler.setRetry(retry);
+		handler.setCallTimeout(callTimeout);
 		//设置小集群地址
 		handler.setUris(uris);
+		//批量调用
+		handler.setBatch(batch);
 
 		//获取类加载器
 //		ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
@@ -135,9 +195,13 @@ public class NettyDirectorProxyClient {
 	}
 
 	/**
-	 * 代理关闭时，关闭pool
+	 * 代理关闭时，关闭pool/连接管理
 	 */
 	public void close () {
+		if (channelManager != null) {
+			channelManager.close();
+			channelManager = null;
+		}
 		if (pool != null) {
 			try {
 				pool.close();
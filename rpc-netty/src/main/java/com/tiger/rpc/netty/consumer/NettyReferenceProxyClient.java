@@ -7,6 +7,7 @@ import com.tiger.rpc.common.enums.ServiceCodeEnum;
 import com.tiger.rpc.common.exception.ServiceException;
 import com.tiger.rpc.common.utils.Constants;
 import com.tiger.rpc.common.utils.UriUtils;
+import com.tiger.rpc.netty.consumer.handler.NettyAsyncHandler;
 import com.tiger.rpc.netty.consumer.handler.NettyDefaultHandler;
 import com.tiger.rpc.netty.consumer.handler.NettyDirectorHandler;
 import lombok.AllArgsConstructor;
@@ -64,14 +65,21 @@ public class NettyReferenceProxyClient {
 		}
 		//使用服务发现器构造处理器
 		NettyDefaultHandler handler = new NettyDefaultHandler(discovery);
-		//设置连接池
+		//设置连接池/连接管理
 		handler.setPool(this.discovery.getPool());
+		handler.setChannelManager(this.discovery.getChannelManager());
 		//设置服务版本号
 		handler.setServiceVersion(config.getVersion());
 		if(config.getRetry() > 0){
 			//设置重试次数
 			handler.setRetry(config.getRetry());
 		}
+		//设置调用总超时、重试预算
+		handler.setCallTimeout(config.getCallTimeout());
+		handler.setRetryBudgetRatio(config.getRetryBudgetRatio());
+		//设置对冲调用
+		handler.setHedgedMethods(config.getHedgedMethods());
+		handler.setHedgePercentile(config.getHedgePercentile());
 		//获取类加载器
 //		ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
 		ClassLoader classLoader = iFaceInterface.getClassLoader();
@@ -82,6 +90,75 @@ public class NettyReferenceProxyClient {
 		return proxy;
 	}
 
+	/**
+	 * 获取异步代理：调用立即返回，结果通过{@link NettyAsyncContext#getFuture()}获取
+	 * 不做缓存，使用时创建
+	 * @param iFaceInterface	接口方法
+	 * @param <T>	泛型
+	 * @return
+	 * @throws ServiceException
+	 */
+	public <T> T getAsyncProxy(Class<T> iFaceInterface) throws ServiceException {
+		return newAsyncProxy(iFaceInterface, false);
+	}
+
+	/**
+	 * 获取批量代理：调用立即返回，结果通过{@link NettyAsyncContext#getFuture()}获取
+	 * 同一连接上时间窗口内的调用合并为一帧发送，provider回写一个批量响应，每个调用的future分别完成
+	 * 不做缓存，使用时创建
+	 * @param iFaceInterface	接口方法
+	 * @param <T>	泛型
+	 * @return
+	 * @throws ServiceException
+	 */
+	public <T> T getBatchProxy(Class<T> iFaceInterface) throws ServiceException {
+		return newAsyncProxy(iFaceInterface, true);
+	}
+
+	/**
+	 * 创建异步代理
+	 * @param iFaceInterface	接口方法
+	 * @param batch	是否批量调用
+	 * @param <T>	泛型
+	 * @return
+	 * @throws ServiceException
+	 */
+	private <T> T newAsyncProxy(Class<T> iFaceInterface, boolean batch) throws ServiceException {
+		if(iFaceInterface == null){
+			throw new ServiceException(ServiceCodeEnum.MISS_REQUIRED_PARAMETER.getCode(),
+					String.format(ServiceCodeEnum.MISS_REQUIRED_PARAMETER.getValue(), "iFaceInterface"));
+		}
+		//校验discovery
+		checkDiscovery(discovery);
+		//获取接口配置
+		ReferenceConfig config = discovery.getConfbyInterfaceClass(iFaceInterface);
+		if(config == null){
+			//接口未引入
+			throw new ServiceException(ServiceCodeEnum.INTERFACE_NOT_IMPORT.getCode(),
+					String.format(ServiceCodeEnum.INTERFACE_NOT_IMPORT.getValue(), iFaceInterface.getName()));
+		}
+		//使用服务发现器构造异步处理器
+		NettyAsyncHandler handler = new NettyAsyncHandler(discovery);
+		//设置连接池/连接管理
+		handler.setPool(this.discovery.getPool());
+		handler.setChannelManager(this.discovery.getChannelManager());
+		//批量调用
+		handler.setBatch(batch);
+		//设置服务版本号
+		handler.setServiceVersion(config.getVersion());
+		if(config.getRetry() > 0){
+			//设置重试次数
+			handler.setRetry(config.getRetry());
+		}
+		//设置调用总超时、重试预算
+		handler.setCallTimeout(config.getCallTimeout());
+		handler.setRetryBudgetRatio(config.getRetryBudgetRatio());
+		//异步调用不对冲，不设置对冲方法
+		ClassLoader classLoader = iFaceInterface.getClassLoader();
+		//创建代理实例
+		return (T) Proxy.newProxyInstance(classLoader, new Class[] { iFaceInterface }, handler);
+	}
+
 	/**
 	 * 基于应用的代理执行，动态获取直连代理
 	 * 不做缓存，使用时创建，使用后销毁
@@ -144,13 +221,20 @@ public class NettyReferenceProxyClient {
 		}
 		//初始化基于服务发现器的直连代理
 		NettyDirectorHandler handler = new NettyDirectorHandler(discovery);
-		//设置连接池
+		//设置连接池/连接管理
 		handler.setPool(this.discovery.getPool());
+		handler.setChannelManager(this.discovery.getChannelManager());
 		handler.setServiceVersion(config.getVersion());
 		if(config.getRetry() >= 0){
 			//设置重试次数
 			handler.setRetry(config.getRetry());
 		}
+		//设置调用总超时、重试预算
+		handler.setCallTimeout(config.getCallTimeout());
+		handler.setRetryBudgetRatio(config.getRetryBudgetRatio());
+		//设置对冲调用
+		handler.setHedgedMethods(config.getHedgedMethods());
+		handler.setHedgePercentile(config.getHedgePercentile());
 		//设置小集群地址
 		handler.setUris(uris);
 		//获取类加载器
@@ -171,8 +255,8 @@ public class NettyReferenceProxyClient {
 			throw new ServiceException(ServiceCodeEnum.MISS_REQUIRED_PARAMETER.getCode(),
 					String.format(ServiceCodeEnum.MISS_REQUIRED_PARAMETER.getValue(), "discovery"));
 		}
-		if(this.discovery.getPool() == null){
-			//连接池校验
+		if(this.discovery.getPool() == null && this.discovery.getChannelManager() == null){
+			//连接池/连接管理校验
 			throw new ServiceException(ServiceCodeEnum.MISS_REQUIRED_PARAMETER.getCode(),
 					String.format(ServiceCodeEnum.MISS_REQUIRED_PARAMETER.getValue(), "pool"));
 		}
@@ -3,14 +3,16 @@ package com.tiger.rpc.netty.consumer;
 import com.tiger.rpc.common.enums.ProtocolTypeEnum;
 import com.tiger.rpc.common.enums.ServiceCodeEnum;
 import com.tiger.rpc.common.exception.ServiceException;
-import com.tiger.rpc.netty.consumer.handler.NettyClientHandler;
+import com.tiger.rpc.netty.invoker.MethodInvoker;
 import com.tiger.rpc.netty.packet.RequestPacket;
-import com.tiger.rpc.netty.packet.ResponsePacket;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
 import java.lang.reflect.Method;
-import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 
 /**
@@ -32,62 +34,164 @@ public class NettyServiceClient {
     private NSocket nSocket;
 
     /**
-     * 1.组装包：请求编号、类名、方法名、参数类型、真实参数值、返回类型
-     * 2.缓存响应包
-     * 3.执行远程rpc调
-     * 4.将缓存中的响应包移除
-     * 5.结果类型转换，弥补fastjson反序列化问题
-     * 6.返回结果
+     * 协商后的序列化编号，为0时使用默认方式
+     */
+    @Setter
+    private byte serializerId;
+
+    /**
+     * 是否单向调用：发送后立即返回null，不等待响应
+     */
+    @Setter
+    private boolean oneWay;
+
+    /**
+     * 是否批量调用：与同一连接上时间窗口内的其他调用合并发送
+     */
+    @Setter
+    private boolean batch;
+
+    /**
+     * 请求压缩编号，为0时不压缩
+     */
+    @Setter
+    private byte compressorId;
+
+    /**
+     * 请求压缩阈值(字节)
+     */
+    @Setter
+    private int compressThreshold;
+
+    /**
+     * 本次调用的超时上限(毫秒)，即调用总超时的剩余时间，为0时使用socket超时
+     */
+    @Setter
+    private long callTimeout;
+
+    /**
+     * 1.异步发送请求
+     * 2.线程等待，最大等待时间与socket超时相同
+     * 3.超时/异常处理
+     * 4.返回结果
      * @return
      */
     public Object syncSend(Method method, Object[] args) throws Throwable {
-        String requestId = UUID.randomUUID().toString().replace("-", "");
+        CompletableFuture<Object> future = sendAsync(method, args);
+        Integer timeout = timeout();
         try {
-            if (this.nSocket == null) {
-                throw new RuntimeException("No tSocket bind.");
+            if (timeout != null && timeout > 0) {
+                return future.get(timeout, TimeUnit.MILLISECONDS);
             }
+            return future.get();
+        } catch (TimeoutException e) {
+            //超时处理
+            throw new ServiceException(ServiceCodeEnum.SERVICE_TIMEOUT.getCode(), String.format(ServiceCodeEnum.SERVICE_TIMEOUT.getValue(), timeout));
+        } catch (ExecutionException e) {
+            //抛出远程异常
+            throw e.getCause();
+        }
+    }
 
-            RequestPacket requestRpc = new RequestPacket();
-            requestRpc.setRequestId(requestId);
-            requestRpc.setProtocolType(ProtocolTypeEnum.NETTY);
-            Class<?> enClosedClazz = method.getDeclaringClass().getEnclosingClass();
-            enClosedClazz = enClosedClazz == null? method.getDeclaringClass() : enClosedClazz;
-            requestRpc.setClassName(enClosedClazz.getName());
-            requestRpc.setMethodName(method.getName());
-            requestRpc.setParamType(method.getParameterTypes());
-            requestRpc.setArgs(args);
-
-            ResponsePacket responseRpc = new ResponsePacket();
-            responseRpc.setRequestId(requestId);
-            responseRpc.setProtocolType(requestRpc.getProtocolType());
-            responseRpc.setReturnType(method.getReturnType());
-            //加入缓存
-            NettyClientHandler.waitingRPC.put(requestId, responseRpc);
-            //阻塞发送：线程等待，一直到有结果返回（ClientHandler调用了responseRpc对象，设置属性）。
-            nSocket.writeAndFlush(requestRpc);
-            //对象线程等待，最大等待时间与socket超时相同
-            synchronized (responseRpc) {
-                responseRpc.wait(nSocket.getTimeout());
+    /**
+     * 异步发送，不阻塞调用线程
+     * 1.组装包：方法描述(方法索引或服务编号/方法编号)、真实参数值
+     * 2.在连接上注册调用，分配请求编号
+     * 3.写入channel，同一channel可并发多个请求
+     * 4.超时后future异常结束，并从缓存中移除
+     * 5.单向调用不注册调用，写入后future即以null完成
+     * 6.批量调用加入连接的请求合并，批量响应后完成
+     * 7.流式调用(返回Iterator)写入后future即以惰性迭代器完成，数据块按额度陆续到达
+     * 8.请求携带剩余等待时间，provider跳过/中断已超时的请求；超时后发送取消帧
+     * @param method    方法
+     * @param args  参数
+     * @return  调用结果future
+     */
+    public CompletableFuture<Object> sendAsync(Method method, Object[] args) {
+        if (this.nSocket == null) {
+            CompletableFuture<Object> future = new CompletableFuture<>();
+            future.completeExceptionally(new RuntimeException("No tSocket bind."));
+            return future;
+        }
+        RequestPacket requestRpc = new RequestPacket();
+        requestRpc.setProtocolType(ProtocolTypeEnum.NETTY);
+        requestRpc.setSerializerId(serializerId);
+        requestRpc.setCompressorId(compressorId);
+        requestRpc.setCompressThreshold(compressThreshold);
+        requestRpc.setArgs(args);
+
+        if (MethodInvoker.isStreaming(method)) {
+            //流式调用：立即返回迭代器，读取时等待数据块
+            CompletableFuture<Object> stream = new CompletableFuture<>();
+            try {
+                stream.complete(nSocket.sendStream(requestRpc, method));
+            } catch (Exception e) {
+                stream.completeExceptionally(e);
             }
+            return stream;
+        }
 
-            /**
-             * 超时处理
-             */
-            if (!responseRpc.isReturnedFlag()) {
-                throw new ServiceException(ServiceCodeEnum.SERVICE_TIMEOUT.getCode(), String.format(ServiceCodeEnum.SERVICE_TIMEOUT.getValue(), nSocket.getTimeout()));
+        if (oneWay) {
+            //单向调用：写入后立即完成
+            CompletableFuture<Object> sent = new CompletableFuture<>();
+            try {
+                nSocket.sendOneWay(requestRpc, method);
+                sent.complete(null);
+            } catch (Exception e) {
+                sent.completeExceptionally(e);
             }
+            return sent;
+        }
+
+        Integer timeout = timeout();
+        if (timeout != null && timeout > 0) {
+            //剩余等待时间，provider据此跳过或中断超时的执行
+            requestRpc.setTimeout(timeout);
+        }
 
-            if (responseRpc.getThrowable() != null) {
-                throw responseRpc.getThrowable();
+        if (batch) {
+            //批量调用：超时由批量调用统一处理
+            try {
+                return nSocket.sendBatched(requestRpc, method);
+            } catch (Exception e) {
+                CompletableFuture<Object> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                return failed;
             }
+        }
 
-            Object object = responseRpc.getResult();
-            return object;
+        RpcFuture future;
+        try {
+            //按连接的方法字典描述方法，注册调用并写入
+            future = nSocket.send(requestRpc, method);
         } catch (Exception e) {
-            throw e;
-        } finally {
-            NettyClientHandler.waitingRPC.remove(requestId);
+            CompletableFuture<Object> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+
+        if (timeout != null && timeout > 0) {
+            //超时处理：超时后异常结束future并通知provider取消；结束时(返回、超时、取消)，future自行移除等待并取消超时任务
+            future.setTimeout(nSocket.newTimeout(task -> {
+                if (future.completeExceptionally(new ServiceException(ServiceCodeEnum.SERVICE_TIMEOUT.getCode(),
+                        String.format(ServiceCodeEnum.SERVICE_TIMEOUT.getValue(), timeout)))) {
+                    future.cancelRemote();
+                }
+            }, timeout));
+        }
+        return future;
+    }
+
+    /**
+     * 本次调用的超时时间：socket超时与调用总超时的剩余时间取较小值
+     * @return
+     */
+    private Integer timeout() {
+        Integer timeout = nSocket.getTimeout();
+        if (callTimeout > 0 && (timeout == null || timeout <= 0 || callTimeout < timeout)) {
+            return (int) Math.min(Integer.MAX_VALUE, callTimeout);
         }
+        return timeout;
     }
 
 }
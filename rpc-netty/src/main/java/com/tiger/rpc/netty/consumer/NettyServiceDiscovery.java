@@ -1,5 +1,6 @@
 package com.tiger.rpc.netty.consumer;
 
+import com.alibaba.fastjson.JSON;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import com.tiger.rpc.common.config.ReferenceConfig;
@@ -10,14 +11,21 @@ import com.tiger.rpc.common.register.ApplicationRegister;
 import com.tiger.rpc.common.register.ReferenceRegister;
 import com.tiger.rpc.common.utils.Constants;
 import com.tiger.rpc.netty.consumer.handler.NettyDefaultHandler;
+import com.tiger.rpc.netty.packet.RequestPacket;
+import com.tiger.rpc.netty.packet.ResponsePacket;
+import com.tiger.rpc.netty.serializer.SerializerFactory;
+import com.tiger.rpc.netty.utils.ProtoStuffUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.pool2.impl.GenericKeyedObjectPool;
 import org.apache.commons.pool2.impl.GenericKeyedObjectPoolConfig;
 
 import java.io.IOException;
 import java.lang.reflect.Proxy;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @ClassName: NettyServiceDiscovery.java
@@ -32,16 +40,26 @@ import java.util.List;
 public class NettyServiceDiscovery extends ReferenceRegister {
 
 	/**
-	 * Netty连接池
+	 * Netty连接池，兼容旧方式：传入连接池时使用
 	 */
 	private GenericKeyedObjectPool<String, NSocket> pool;
 
+	/**
+	 * 多路复用的连接管理，未传入连接池时默认使用
+	 */
+	private ChannelManager channelManager;
+
+	/**
+	 * 服务名/provider地址 <---> 序列化协商结果
+	 */
+	private final Map<String, Negotiation> negotiations = new ConcurrentHashMap<>();
+
 	public NettyServiceDiscovery(){
 		super();
 	}
 
 	public NettyServiceDiscovery(ApplicationRegister appRegister, List<ReferenceConfig> referenceList){
-	    this(appRegister, referenceList, new RoundRobinStrategy(), null);
+	    this(appRegister, referenceList, new RoundRobinStrategy(), null, null);
 	}
 
 	public NettyServiceDiscovery(ApplicationRegister appRegister, List<ReferenceConfig> referenceList, GenericKeyedObjectPool<String, NSocket> pool){
@@ -49,14 +67,27 @@ public class NettyServiceDiscovery extends ReferenceRegister {
 	}
 
 	public NettyServiceDiscovery(ApplicationRegister appRegister, List<ReferenceConfig> referenceList, ProviderStrategy<String> providerStrategy, GenericKeyedObjectPool<String, NSocket> pool){
+		this(appRegister, referenceList, providerStrategy, pool, null);
+	}
+
+	public NettyServiceDiscovery(ApplicationRegister appRegister, List<ReferenceConfig> referenceList, ProviderStrategy<String> providerStrategy, ChannelManager channelManager){
+		this(appRegister, referenceList, providerStrategy, null, channelManager);
+	}
+
+	/**
+	 * @param pool	连接池，传入时使用连接池
+	 * @param channelManager	连接管理，连接池和连接管理都为空时使用默认连接管理
+	 */
+	private NettyServiceDiscovery(ApplicationRegister appRegister, List<ReferenceConfig> referenceList, ProviderStrategy<String> providerStrategy,
+								  GenericKeyedObjectPool<String, NSocket> pool, ChannelManager channelManager){
         Preconditions.checkArgument(appRegister != null, "appRegister can not be null");
         Preconditions.checkArgument(appRegister.isRegistered(), "Application must be registered before references");
         super.setAppRegister(appRegister);
         //过滤服务
         doFilterServiceList(referenceList);
-		//if pool equals null, then use default pool
-		pool = pool == null ? getDefaultPool() : pool;
+		//if pool and channel manager equal null, then use default channel manager
 		this.pool = pool;
+		this.channelManager = pool == null && channelManager == null ? new ChannelManager() : channelManager;
         //填充代理类: 需要使用线程池
         doFillProxy(Lists.newArrayList(super.getReferenceBeanMap().values()));
         //将引入服务注册器回写
@@ -99,6 +130,34 @@ public class NettyServiceDiscovery extends ReferenceRegister {
 		//此处不做处理
 	}
 
+	/**
+	 * provider上线：连接管理后台建立所有连接，连接池后台创建空闲连接
+	 * @param serviceName	服务名_版本号
+	 * @param address	provider地址(host:port)
+	 */
+	@Override
+	protected void onProviderOnline(String serviceName, String address) {
+		if (channelManager != null) {
+			channelManager.warmUp(address);
+		} else {
+			super.warmUpPool(pool, address);
+		}
+	}
+
+	/**
+	 * provider下线：连接管理等待在途调用结束后关闭连接，连接池关闭空闲连接
+	 * @param serviceName	服务名_版本号
+	 * @param address	provider地址(host:port)
+	 */
+	@Override
+	protected void onProviderOffline(String serviceName, String address) {
+		if (channelManager != null) {
+			channelManager.remove(address);
+		} else {
+			super.drainPool(pool, address);
+		}
+	}
+
 	/**
 	 * 填充代理
 	 * @param referenceList
@@ -108,7 +167,9 @@ public class NettyServiceDiscovery extends ReferenceRegister {
 		if(CollectionUtils.isEmpty(referenceList)){
 			return;
 		}
-		Preconditions.checkArgument(pool != null, "pool can not be null");
+		Preconditions.checkArgument(pool != null || channelManager != null, "pool and channelManager can not be both null");
+		//预热数据包schema
+		ProtoStuffUtil.warmUp(RequestPacket.class, ResponsePacket.class);
 		NettyDefaultHandler handler;
 		Object proxy;
 		/**
@@ -118,19 +179,28 @@ public class NettyServiceDiscovery extends ReferenceRegister {
 			try {
 				//填充默认代理
 				handler = new NettyDefaultHandler(this);
-				//设置连接池
+				//设置连接池/连接管理
 				handler.setPool(pool);
+				handler.setChannelManager(channelManager);
 				//设置服务版本号
 				handler.setServiceVersion(config.getVersion());
 				if(config.getRetry() > 0){
 					//设置重试次数
 					handler.setRetry(config.getRetry());
 				}
+				//设置调用总超时、重试预算
+				handler.setCallTimeout(config.getCallTimeout());
+				handler.setRetryBudgetRatio(config.getRetryBudgetRatio());
+				//设置对冲调用
+				handler.setHedgedMethods(config.getHedgedMethods());
+				handler.setHedgePercentile(config.getHedgePercentile());
 				//获取类加载器
 //				ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
 				ClassLoader classLoader = config.getInterfaceClass().getClassLoader();
 				//创建jdk反射代理实例
 				proxy = Proxy.newProxyInstance(classLoader, new Class[] { config.getInterfaceClass() }, handler);
+				//预热接口参数/返回值的schema
+				ProtoStuffUtil.warmUpInterface(config.getInterfaceClass());
 				//回写代理
 				config.setProxy(proxy);
 			} catch (Exception e) {
@@ -140,6 +210,53 @@ public class NettyServiceDiscovery extends ReferenceRegister {
 
 	}
 
+	/**
+	 * 协商序列化方式：consumer偏好列表与provider节点数据中的支持列表比较
+	 * 按provider缓存协商结果，provider节点数据变化后重新协商
+	 * @param config	引入配置
+	 * @param address	provider地址(host:port)
+	 * @return	序列化编号
+	 */
+	public byte negotiateSerializer(ReferenceConfig config, String address) {
+		if (config == null || StringUtils.isBlank(config.getSerializers())) {
+			//未设置偏好，使用默认
+			return SerializerFactory.getDefault().getId();
+		}
+		String serviceName = getServiceNameByConf(config);
+		String providerData = super.getProviderData(serviceName, address);
+		if (providerData == null) {
+			//无provider数据(直连等)，使用默认
+			return SerializerFactory.getDefault().getId();
+		}
+		String key = serviceName + Constants.PATH_SEPARATOR + address;
+		Negotiation negotiation = negotiations.get(key);
+		if (negotiation == null || negotiation.providerData != providerData) {
+			String supported = JSON.parseObject(providerData).getString("serializers");
+			negotiation = new Negotiation(providerData, SerializerFactory.negotiate(config.getSerializers(), supported).getId());
+			negotiations.put(key, negotiation);
+			log.debug("Service[{}] provider[{}] negotiated serializer[{}]", serviceName, address, negotiation.serializerId);
+		}
+		return negotiation.serializerId;
+	}
+
+	/**
+	 * 协商结果
+	 */
+	private static class Negotiation {
+
+		/**
+		 * 协商时的provider节点数据
+		 */
+		private final String providerData;
+
+		private final byte serializerId;
+
+		Negotiation(String providerData, byte serializerId) {
+			this.providerData = providerData;
+			this.serializerId = serializerId;
+		}
+	}
+
 	@Override
 	public String getServiceNameByConf(ReferenceConfig conf) {
 		StringBuffer sb = new StringBuffer();
@@ -155,6 +272,10 @@ public class NettyServiceDiscovery extends ReferenceRegister {
 		try {
 			log.info("Start to close class[{}]...", this.getClass().getName());
 			super.unDiscovery();
+			if (channelManager != null) {
+				//关闭所有连接
+				channelManager.close();
+			}
 			log.info("Class[{}] closed successfully", this.getClass().getName());
 		} catch (Exception e) {
 			log.error("Close class[{}] error", this.getClass().getName(), e);
@@ -170,11 +291,20 @@ public class NettyServiceDiscovery extends ReferenceRegister {
 		return this;
 	}
 
+	public ChannelManager getChannelManager() {
+		return channelManager;
+	}
+
+	public NettyServiceDiscovery setChannelManager(ChannelManager channelManager) {
+		this.channelManager = channelManager;
+		return this;
+	}
+
 	/**
-	 * 静态方法：获取默认配置的线程池
+	 * 静态方法：获取默认配置的线程池，旧方式，需要使用连接池时可传入
 	 * @return
 	 */
-	private static GenericKeyedObjectPool<String, NSocket> getDefaultPool() {
+	public static GenericKeyedObjectPool<String, NSocket> getDefaultPool() {
 		//连接池配置
 		GenericKeyedObjectPoolConfig config = new GenericKeyedObjectPoolConfig();
 		/**
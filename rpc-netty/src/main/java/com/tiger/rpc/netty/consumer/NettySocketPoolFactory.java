@@ -1,6 +1,5 @@
 package com.tiger.rpc.netty.consumer;
 
-import com.alibaba.fastjson.JSON;
 import lombok.Builder;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
@@ -27,6 +26,11 @@ public class NettySocketPoolFactory extends BaseKeyedPooledObjectFactory<String,
 	 */
 	private Integer timeout;
 
+	/**
+	 * 最大空闲时间(毫秒)：连接上超过该时间无读写时，校验不通过并重建，0为不限制
+	 */
+	private long maxIdleMillis;
+
 	/**
 	 * HOST:PORT分割符
 	 */
@@ -51,10 +55,10 @@ public class NettySocketPoolFactory extends BaseKeyedPooledObjectFactory<String,
 			nsocket.open();
 		} catch (Exception e){
 			//先打印，在抛出异常
-			log.error("Create TSocket[{}] of key[{}] error: {}", nsocket != null ? JSON.toJSONString(nsocket.getLocalSocketAddress()) : null, key, e);
+			log.error("Create TSocket of key[{}] error", key, e);
 			throw e;
 		}
-		log.debug("Create TSocket[{}] of key[{}] successfully", JSON.toJSONString(nsocket.getLocalSocketAddress()), key);
+		log.debug("Create TSocket[{}] of key[{}] successfully", nsocket.getLocalSocketAddress(), key);
 		return nsocket;
 	}
 
@@ -66,27 +70,38 @@ public class NettySocketPoolFactory extends BaseKeyedPooledObjectFactory<String,
 
 	@Override
 	public void destroyObject(String key, PooledObject<NSocket> p) throws Exception {
-		//先缓存序列化，否则内部重置为null，调用不到
-		String tSocket = JSON.toJSONString(p.getObject().getLocalSocketAddress());
-		log.debug("Start to destroy TSocket[{}] of key[{}]", tSocket, key);
+		NSocket nsocket = p == null ? null : p.getObject();
+		if (nsocket == null) {
+			return;
+		}
+		//地址对象直接作为日志参数，debug关闭时不做格式化
+		log.debug("Start to destroy TSocket[{}] of key[{}]", nsocket.getLocalSocketAddress(), key);
 		//关闭连接
-		if(p != null && p.getObject() != null && p.getObject().isOpen()){
-			p.getObject().close();
+		if(nsocket.isOpen()){
+			nsocket.close();
 		}
-		log.debug("Destroy TSocket[{}] of key[{}] successfully", tSocket, key);
+		log.debug("Destroy TSocket of key[{}] successfully", key);
 	}
 
+	/**
+	 * 校验连接：只读取channel状态和最后活动时间，不产生对象
+	 * @param key
+	 * @param p
+	 * @return
+	 */
 	@Override
 	public boolean validateObject(String key, PooledObject<NSocket> p) {
-		//检验连接
-		String tSocket = JSON.toJSONString(p.getObject().getLocalSocketAddress());
-		log.debug("Start to check TSocket[{}] of key[{}]", tSocket, key);
-		boolean isValid = false;
-		if(p != null && p.getObject() != null){
-			isValid = p.getObject().isOpen();
+		NSocket nsocket = p == null ? null : p.getObject();
+		if (nsocket == null || !nsocket.isOpen()) {
+			log.debug("Check TSocket of key[{}] result[false]: closed", key);
+			return false;
+		}
+		if (maxIdleMillis > 0 && System.currentTimeMillis() - nsocket.getLastActivity() > maxIdleMillis) {
+			//长时间无读写，可能已被防火墙断开，重建
+			log.debug("Check TSocket of key[{}] result[false]: idle too long", key);
+			return false;
 		}
-		log.debug("Check TSocket[{}] of key[{}] result[{}]", tSocket, key, isValid);
-		return isValid;
+		return true;
 	}
 
 }
@@ -0,0 +1,150 @@
+package com.tiger.rpc.netty.consumer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * @ClassName: PendingCallRegistry.java
+ *
+ * @Description: 连接内等待响应的调用注册表
+ *              1.请求编号连接内从1开始递增
+ *              2.按编号取模定位槽位，槽位存放future本身，注册、查找、移除不产生额外对象
+ *              3.槽位被更早的未完成调用占用时(在途调用超过槽位数)，放入溢出map
+ *              4.连接断开时，所有等待中的调用立即失败
+ *
+ * @Author: Tiger
+ *
+ * @Date: 2021/6/12
+ */
+public class PendingCallRegistry {
+
+    /**
+     * 默认槽位数，2的幂
+     */
+    private static final int DEFAULT_CAPACITY = 4096;
+
+    /**
+     * 请求编号生成器
+     */
+    private final AtomicLong idGenerator = new AtomicLong();
+
+    /**
+     * 槽位
+     */
+    private final AtomicReferenceArray<RpcFuture> slots;
+
+    /**
+     * 槽位掩码
+     */
+    private final int mask;
+
+    /**
+     * 溢出调用：请求编号 <---> future
+     */
+    private final Map<Long, RpcFuture> overflow = new ConcurrentHashMap<>();
+
+    /**
+     * 在途调用数
+     */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    public PendingCallRegistry() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity  槽位数，向上取2的幂
+     */
+    public PendingCallRegistry(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * 分配请求编号，不注册调用(单向请求)
+     * @return
+     */
+    public long nextRequestId() {
+        return idGenerator.incrementAndGet();
+    }
+
+    /**
+     * 创建并注册调用
+     * @return
+     */
+    public RpcFuture newCall() {
+        RpcFuture future = new RpcFuture(idGenerator.incrementAndGet(), this);
+        pending.incrementAndGet();
+        if (!slots.compareAndSet(index(future.getRequestId()), null, future)) {
+            overflow.put(future.getRequestId(), future);
+        }
+        return future;
+    }
+
+    /**
+     * 根据请求编号移除调用
+     * @param requestId
+     * @return  不存在时返回null
+     */
+    public RpcFuture remove(long requestId) {
+        int index = index(requestId);
+        RpcFuture future = slots.get(index);
+        if (future != null && future.getRequestId() == requestId && slots.compareAndSet(index, future, null)) {
+            pending.decrementAndGet();
+            return future;
+        }
+        future = overflow.isEmpty() ? null : overflow.remove(requestId);
+        if (future != null) {
+            pending.decrementAndGet();
+        }
+        return future;
+    }
+
+    /**
+     * 移除调用
+     * @param future
+     */
+    public void remove(RpcFuture future) {
+        if (slots.compareAndSet(index(future.getRequestId()), future, null)
+                || (!overflow.isEmpty() && overflow.remove(future.getRequestId(), future))) {
+            pending.decrementAndGet();
+        }
+    }
+
+    /**
+     * 在途调用数
+     * @return
+     */
+    public int pendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * 所有等待中的调用异常结束
+     * @param cause 异常
+     * @return  结束的调用数
+     */
+    public int failAll(Throwable cause) {
+        int count = 0;
+        for (int i = 0; i < slots.length(); i++) {
+            RpcFuture future = slots.get(i);
+            if (future != null && future.completeExceptionally(cause)) {
+                count++;
+            }
+        }
+        for (RpcFuture future : overflow.values()) {
+            if (future.completeExceptionally(cause)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private int index(long requestId) {
+        return (int) requestId & mask;
+    }
+}
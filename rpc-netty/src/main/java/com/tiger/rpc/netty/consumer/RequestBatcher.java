@@ -0,0 +1,194 @@
+package com.tiger.rpc.netty.consumer;
+
+import com.tiger.rpc.common.enums.ProtocolTypeEnum;
+import com.tiger.rpc.common.enums.ServiceCodeEnum;
+import com.tiger.rpc.common.exception.ServiceException;
+import com.tiger.rpc.netty.code.RpcEncoder;
+import com.tiger.rpc.netty.packet.BatchRequestPacket;
+import com.tiger.rpc.netty.packet.BatchResponsePacket;
+import com.tiger.rpc.netty.packet.RequestPacket;
+import com.tiger.rpc.netty.packet.ResponsePacket;
+import io.netty.channel.Channel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @ClassName: RequestBatcher.java
+ *
+ * @Description: 连接内请求合并，每个channel一个实例
+ *              1.时间窗口内的请求合并为一个{@link BatchRequestPacket}，达到最大数量时立即发送
+ *              2.批量请求作为一个调用注册，共用请求编号和超时
+ *              3.批量响应按位置完成每个请求的future
+ *
+ * @Author: Tiger
+ *
+ * @Date: 2021/7/3
+ */
+public class RequestBatcher {
+
+    /**
+     * 所属channel
+     */
+    private final Channel channel;
+
+    /**
+     * 所属channel的等待响应注册表
+     */
+    private final PendingCallRegistry registry;
+
+    /**
+     * 每批最大请求数
+     */
+    private final int maxSize;
+
+    /**
+     * 时间窗口(微秒)
+     */
+    private final long windowMicros;
+
+    /**
+     * provider是否并行执行
+     */
+    private final boolean parallel;
+
+    /**
+     * 批量调用超时时间(毫秒)，0为不超时
+     */
+    private final int timeout;
+
+    /**
+     * 当前窗口内的请求
+     */
+    private List<Entry> entries;
+
+    public RequestBatcher(Channel channel, PendingCallRegistry registry, int maxSize, long windowMicros, boolean parallel, int timeout) {
+        this.channel = channel;
+        this.registry = registry;
+        this.maxSize = maxSize < 1 ? 1 : maxSize;
+        this.windowMicros = windowMicros;
+        this.parallel = parallel;
+        this.timeout = timeout;
+        this.entries = new ArrayList<>(this.maxSize);
+    }
+
+    /**
+     * 加入当前窗口
+     *          1.窗口第一个请求：安排窗口结束时发送
+     *          2.达到最大数量或序列化方式不同：立即发送当前窗口
+     * @param request   已填充方法描述的请求
+     * @return  该请求的结果future
+     */
+    public CompletableFuture<Object> add(RequestPacket request) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        List<Entry> previous = null;
+        List<Entry> full = null;
+        boolean first;
+        synchronized (this) {
+            if (!entries.isEmpty() && entries.get(0).request.getSerializerId() != request.getSerializerId()) {
+                previous = entries;
+                entries = new ArrayList<>(maxSize);
+            }
+            entries.add(new Entry(request, future));
+            first = entries.size() == 1;
+            if (entries.size() >= maxSize) {
+                full = entries;
+                entries = new ArrayList<>(maxSize);
+            }
+        }
+        if (previous != null) {
+            send(previous);
+        }
+        if (full != null) {
+            send(full);
+        } else if (first) {
+            //窗口结束时发送，在io线程上执行
+            channel.eventLoop().schedule(this::flush, windowMicros, TimeUnit.MICROSECONDS);
+        }
+        return future;
+    }
+
+    /**
+     * 发送当前窗口内的请求
+     */
+    public void flush() {
+        List<Entry> current;
+        synchronized (this) {
+            if (entries.isEmpty()) {
+                return;
+            }
+            current = entries;
+            entries = new ArrayList<>(maxSize);
+        }
+        send(current);
+    }
+
+    /**
+     * 组装批量请求并注册为一个调用，写入channel
+     * @param batch
+     */
+    private void send(List<Entry> batch) {
+        RequestPacket[] requests = new RequestPacket[batch.size()];
+        for (int i = 0; i < requests.length; i++) {
+            requests[i] = batch.get(i).request;
+        }
+        BatchRequestPacket packet = new BatchRequestPacket();
+        packet.setProtocolType(ProtocolTypeEnum.NETTY);
+        packet.setSerializerId(requests[0].getSerializerId());
+        packet.setCompressorId(requests[0].getCompressorId());
+        packet.setCompressThreshold(requests[0].getCompressThreshold());
+        packet.setRequests(requests);
+        packet.setParallel(parallel);
+        RpcFuture future = registry.newCall();
+        packet.setRequestId(future.getRequestId());
+        //批量响应或异常，逐个完成请求
+        future.whenComplete((result, e) -> {
+            if (e != null) {
+                for (Entry entry : batch) {
+                    entry.future.completeExceptionally(e);
+                }
+                return;
+            }
+            ResponsePacket[] responses = ((BatchResponsePacket) result).getResponses();
+            for (int i = 0; i < batch.size(); i++) {
+                ResponsePacket response = responses != null && i < responses.length ? responses[i] : null;
+                if (response == null) {
+                    batch.get(i).future.completeExceptionally(new ServiceException(ServiceCodeEnum.SYSTEM_ERROR.getCode(),
+                            ServiceCodeEnum.SYSTEM_ERROR.getValue()));
+                } else if (response.getThrowable() != null) {
+                    batch.get(i).future.completeExceptionally(response.getThrowable());
+                } else {
+                    batch.get(i).future.complete(response.getResult());
+                }
+            }
+        });
+        if (timeout > 0) {
+            future.setTimeout(NettyClientTransport.getInstance().newTimeout(t -> future.completeExceptionally(new ServiceException(ServiceCodeEnum.SERVICE_TIMEOUT.getCode(),
+                    String.format(ServiceCodeEnum.SERVICE_TIMEOUT.getValue(), timeout))), timeout));
+        }
+        channel.writeAndFlush(RpcEncoder.precompress(channel, packet)).addListener(f -> {
+            if (!f.isSuccess()) {
+                //写入失败，结束调用
+                future.completeExceptionally(f.cause());
+            }
+        });
+    }
+
+    /**
+     * 窗口内的请求及其future
+     */
+    private static class Entry {
+
+        private final RequestPacket request;
+
+        private final CompletableFuture<Object> future;
+
+        Entry(RequestPacket request, CompletableFuture<Object> future) {
+            this.request = request;
+            this.future = future;
+        }
+    }
+
+}
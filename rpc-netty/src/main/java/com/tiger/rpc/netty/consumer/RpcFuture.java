@@ -0,0 +1,124 @@
+package com.tiger.rpc.netty.consumer;
+
+import com.tiger.rpc.common.enums.ProtocolTypeEnum;
+import com.tiger.rpc.netty.packet.CancelPacket;
+import io.netty.channel.Channel;
+import io.netty.util.Timeout;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * @ClassName: RpcFuture.java
+ *
+ * @Description: 远程调用结果future，携带请求编号
+ *              结束时(返回、超时、取消、异常)，从所属连接的等待注册表中移除，并取消超时任务
+ *              超时或取消时可通知provider放弃执行
+ *
+ * @Author: Tiger
+ *
+ * @Date: 2021/6/12
+ */
+public class RpcFuture extends CompletableFuture<Object> {
+
+    /**
+     * 请求编号，连接内递增
+     */
+    private final long requestId;
+
+    /**
+     * 所属连接的等待注册表
+     */
+    private final PendingCallRegistry registry;
+
+    /**
+     * 超时任务
+     */
+    private volatile Timeout timeout;
+
+    /**
+     * 请求写入的channel
+     */
+    private volatile Channel channel;
+
+    RpcFuture(long requestId, PendingCallRegistry registry) {
+        this.requestId = requestId;
+        this.registry = registry;
+    }
+
+    public long getRequestId() {
+        return requestId;
+    }
+
+    /**
+     * 绑定请求写入的channel，用于取消
+     * @param channel
+     */
+    void bind(Channel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * 通知provider取消请求：跳过未执行的请求，中断执行中的请求
+     *          只在请求写入的channel上发送，连接已断开时忽略(provider会取消该连接上的请求)
+     */
+    public void cancelRemote() {
+        Channel current = this.channel;
+        if (current == null || !current.isActive()) {
+            return;
+        }
+        CancelPacket packet = new CancelPacket();
+        packet.setRequestId(requestId);
+        packet.setProtocolType(ProtocolTypeEnum.NETTY);
+        current.writeAndFlush(packet);
+    }
+
+    /**
+     * 设置超时任务，future已结束时直接取消
+     * @param timeout
+     */
+    public void setTimeout(Timeout timeout) {
+        this.timeout = timeout;
+        if (timeout != null && isDone()) {
+            timeout.cancel();
+        }
+    }
+
+    @Override
+    public boolean complete(Object value) {
+        boolean completed = super.complete(value);
+        if (completed) {
+            release();
+        }
+        return completed;
+    }
+
+    @Override
+    public boolean completeExceptionally(Throwable ex) {
+        boolean completed = super.completeExceptionally(ex);
+        if (completed) {
+            release();
+        }
+        return completed;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        if (cancelled) {
+            release();
+            cancelRemote();
+        }
+        return cancelled;
+    }
+
+    /**
+     * 移除等待，取消超时任务
+     */
+    private void release() {
+        registry.remove(this);
+        Timeout task = this.timeout;
+        if (task != null) {
+            task.cancel();
+        }
+    }
+}
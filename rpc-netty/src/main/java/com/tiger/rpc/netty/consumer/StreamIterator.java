@@ -0,0 +1,226 @@
+package com.tiger.rpc.netty.consumer;
+
+import com.tiger.rpc.common.enums.ProtocolTypeEnum;
+import com.tiger.rpc.common.enums.ServiceCodeEnum;
+import com.tiger.rpc.common.exception.ServiceException;
+import com.tiger.rpc.netty.packet.StreamCreditPacket;
+import com.tiger.rpc.netty.packet.StreamPacket;
+import io.netty.channel.Channel;
+import lombok.Getter;
+
+import java.io.Closeable;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @ClassName: StreamIterator.java
+ *
+ * @Description: consumer端流式响应的惰性迭代器，每个流式调用一个实例
+ *              1.请求发送后授予provider初始额度(块数)，provider按额度分块回写
+ *              2.每读完一块补充一个额度，缓冲的块数不超过初始额度，结果不在内存中完整物化
+ *              3.读取等待超过socket超时时间时关闭迭代器并取消流，抛出超时异常；provider异常、连接断开时抛出对应异常
+ *              4.未读完时关闭迭代器会取消流，provider停止迭代
+ *
+ * @Author: Tiger
+ *
+ * @Date: 2021/7/4
+ */
+public class StreamIterator implements Iterator<Object>, Closeable {
+
+    /**
+     * 请求编号
+     */
+    @Getter
+    private final long requestId;
+
+    /**
+     * 所属channel
+     */
+    private final Channel channel;
+
+    /**
+     * 所属channel的流：请求编号 <---> 迭代器，结束时移除
+     */
+    private final Map<Long, StreamIterator> streams;
+
+    /**
+     * 额度(块数)
+     */
+    private final int window;
+
+    /**
+     * 单块等待时间(毫秒)，0为一直等待
+     */
+    private final int timeout;
+
+    /**
+     * provider回写的块，io线程放入，调用线程取出
+     */
+    private final LinkedBlockingQueue<StreamPacket> chunks = new LinkedBlockingQueue<>();
+
+    /**
+     * 当前块
+     */
+    private Object[] current;
+
+    /**
+     * 当前块读取位置
+     */
+    private int position;
+
+    /**
+     * 是否已读到结束块
+     */
+    private boolean end;
+
+    /**
+     * 是否已关闭
+     */
+    private volatile boolean closed;
+
+    public StreamIterator(long requestId, Channel channel, Map<Long, StreamIterator> streams, int window, int timeout) {
+        this.requestId = requestId;
+        this.channel = channel;
+        this.streams = streams;
+        this.window = window < 1 ? 1 : window;
+        this.timeout = timeout;
+    }
+
+    /**
+     * 授予初始额度，请求写入后调用
+     */
+    public void start() {
+        writeCredit(window, false);
+    }
+
+    /**
+     * 收到provider回写的块(io线程)
+     * @param packet
+     */
+    public void onChunk(StreamPacket packet) {
+        if (packet.isEnd()) {
+            streams.remove(requestId, this);
+        }
+        chunks.offer(packet);
+    }
+
+    /**
+     * 流异常结束：provider错误响应 or 连接断开(io线程)
+     * @param throwable
+     */
+    public void fail(Throwable throwable) {
+        streams.remove(requestId, this);
+        StreamPacket packet = new StreamPacket();
+        packet.setEnd(true);
+        packet.setThrowable(throwable == null ? new ServiceException(ServiceCodeEnum.SYSTEM_ERROR.getCode(),
+                ServiceCodeEnum.SYSTEM_ERROR.getValue()) : throwable);
+        chunks.offer(packet);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (current == null || position >= current.length) {
+            if (end || closed) {
+                return false;
+            }
+            if (current != null) {
+                //读完一块，补充额度
+                writeCredit(1, false);
+                current = null;
+            }
+            StreamPacket packet = take();
+            if (packet.getThrowable() != null) {
+                end = true;
+                throwUnchecked(packet.getThrowable());
+            }
+            end = packet.isEnd();
+            current = packet.getElements() == null ? new Object[0] : packet.getElements();
+            position = 0;
+        }
+        return true;
+    }
+
+    @Override
+    public Object next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Object element = current[position];
+        current[position++] = null;
+        return element;
+    }
+
+    /**
+     * 关闭迭代器，未读完时取消流
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (streams.remove(requestId, this)) {
+            writeCredit(0, true);
+        }
+        chunks.clear();
+    }
+
+    /**
+     * 等待下一块
+     * @return
+     */
+    private StreamPacket take() {
+        StreamPacket packet;
+        try {
+            packet = timeout > 0 ? chunks.poll(timeout, TimeUnit.MILLISECONDS) : chunks.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new ServiceException(ServiceCodeEnum.SYSTEM_ERROR.getCode(), ServiceCodeEnum.SYSTEM_ERROR.getValue());
+        }
+        if (packet == null) {
+            //单块等待超时：关闭并取消流，provider停止迭代，迟到的块被丢弃
+            close();
+            throw new ServiceException(ServiceCodeEnum.SERVICE_TIMEOUT.getCode(), String.format(ServiceCodeEnum.SERVICE_TIMEOUT.getValue(), timeout));
+        }
+        return packet;
+    }
+
+    /**
+     * 授予额度或取消
+     * @param credits
+     * @param cancel
+     */
+    private void writeCredit(int credits, boolean cancel) {
+        if (!channel.isActive()) {
+            return;
+        }
+        StreamCreditPacket packet = new StreamCreditPacket();
+        packet.setRequestId(requestId);
+        packet.setProtocolType(ProtocolTypeEnum.NETTY);
+        packet.setCredits(credits);
+        packet.setCancel(cancel);
+        channel.writeAndFlush(packet);
+    }
+
+    /**
+     * 抛出远程异常，与同步调用一致解包方法反射异常
+     * @param throwable
+     */
+    private static void throwUnchecked(Throwable throwable) {
+        if (throwable instanceof InvocationTargetException && ((InvocationTargetException) throwable).getTargetException() != null) {
+            throwable = ((InvocationTargetException) throwable).getTargetException();
+        }
+        if (throwable instanceof RuntimeException) {
+            throw (RuntimeException) throwable;
+        }
+        if (throwable instanceof Error) {
+            throw (Error) throwable;
+        }
+        throw new ServiceException(ServiceCodeEnum.SYSTEM_ERROR.getCode(), throwable.getMessage(), throwable);
+    }
+}
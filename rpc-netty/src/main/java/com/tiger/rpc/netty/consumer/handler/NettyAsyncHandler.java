@@ -0,0 +1,138 @@
+package com.tiger.rpc.netty.consumer.handler;
+
+import com.google.common.base.Defaults;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.tiger.rpc.netty.consumer.NSocket;
+import com.tiger.rpc.netty.consumer.NettyAsyncContext;
+import com.tiger.rpc.netty.consumer.NettyClientTransport;
+import com.tiger.rpc.netty.consumer.NettyServiceClient;
+import com.tiger.rpc.netty.consumer.NettyServiceDiscovery;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @ClassName: NettyAsyncHandler.java
+ *
+ * @Description: netty异步服务代理
+ *              1.调用立即返回(基本类型返回默认值，其他返回null)，结果通过{@link NettyAsyncContext#getFuture()}获取
+ *              2.连接写入请求后立即归还连接池，多个请求复用同一连接，通过请求编号关联响应
+ *              3.future在netty事件线程中完成，回调中不要做阻塞操作
+ *              4.重试与同步调用一致：避开失败的provider，退避后在时间轮上触发，受调用总超时和重试预算限制
+ *                重试在专用的有界线程池上执行(借连接、建连接可能阻塞)，队列满时不再重试
+ *              5.不对冲：{@link com.tiger.rpc.common.annotation.Hedged}及对冲方法配置只对同步代理生效
+ *
+ * @Author: Tiger
+ *
+ * @Date: 2021/6/2
+ */
+@Slf4j
+public class NettyAsyncHandler extends NettyDefaultHandler {
+
+    public NettyAsyncHandler(NettyServiceDiscovery discovery) {
+        super(discovery);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        //异步执行，失败时按重试次数重试
+        processAsync(method, args, 0, deadline(), new HashSet<>(), future);
+        //设置上下文，供调用方获取
+        NettyAsyncContext.setFuture(future);
+        return Defaults.defaultValue(method.getReturnType());
+    }
+
+    /**
+     * 异步调用，实现重试机制
+     * @param method    方法
+     * @param args  参数
+     * @param counter   执行次数计数器
+     * @param deadline  调用截止时间，为0时不限制
+     * @param failedKeys    本次调用失败过的provider
+     * @param result    最终结果future
+     */
+    private void processAsync(Method method, Object[] args, int counter, long deadline, Set<String> failedKeys,
+                              CompletableFuture<Object> result) {
+        String key = null;
+        NSocket tSocket = null;
+        CompletableFuture<Object> future;
+        try {
+            key = selectKey(method, args, failedKeys);
+            tSocket = borrowSocket(key, remaining(deadline));
+            //发送请求，不等待响应
+            future = ((NettyServiceClient) getClient(tSocket, method, remaining(deadline))).sendAsync(method, args);
+        } catch (Throwable e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        } finally {
+            if (tSocket != null) {
+                //写入后立即归还，连接可被其他请求复用
+                returnSocket(key, tSocket);
+            }
+        }
+        final String finalKey = key;
+        final NSocket finalSocket = tSocket;
+        future.whenComplete((r, e) -> {
+            if (e == null) {
+                retryBudget(method).deposit();
+                result.complete(r);
+                return;
+            }
+            Throwable tw = processException(e, counter, finalKey, finalSocket);
+            long delay = 0;
+            if (tw == null) {
+                //可以重试：记录失败的provider，超过截止时间或预算耗尽时不再重试
+                if (finalKey != null) {
+                    failedKeys.add(finalKey);
+                }
+                delay = retryDelay(method, counter + 1, deadline);
+                if (delay < 0) {
+                    tw = e instanceof InvocationTargetException ? ((InvocationTargetException) e).getTargetException() : e;
+                }
+            }
+            if (tw != null) {
+                log.error("Method[{}] async execute error after [{}] times", method.getDeclaringClass().getName() + "." + method.getName(), counter, tw);
+                result.completeExceptionally(tw);
+                return;
+            }
+            //重试：离开netty事件线程，避免借连接、建连接阻塞事件线程；退避时由时间轮延迟触发
+            log.debug("Method[{}] async retry [{}] times error[{}]", method.getDeclaringClass().getName() + "." + method.getName(), counter, e.getMessage());
+            Runnable retry = () -> {
+                try {
+                    RetryExecutorHolder.EXECUTOR.execute(() -> processAsync(method, args, counter + 1, deadline, failedKeys, result));
+                } catch (RejectedExecutionException re) {
+                    //重试线程池已满，放弃重试
+                    log.warn("Method[{}] async retry rejected", method.getDeclaringClass().getName() + "." + method.getName());
+                    result.completeExceptionally(e instanceof InvocationTargetException ? ((InvocationTargetException) e).getTargetException() : e);
+                }
+            };
+            if (delay == 0 || NettyClientTransport.getInstance().newTimeout(timeout -> retry.run(), delay) == null) {
+                retry.run();
+            }
+        });
+    }
+
+    /**
+     * 异步重试线程池，进程共享，使用时创建：有界线程、有界队列，空闲线程回收，不占用公共ForkJoinPool
+     */
+    private static class RetryExecutorHolder {
+        private static final int THREADS = 8;
+        private static final int QUEUE_SIZE = 1024;
+        private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(QUEUE_SIZE), new ThreadFactoryBuilder().setNameFormat("nettyAsyncRetry-%d").setDaemon(true).build());
+
+        static {
+            EXECUTOR.allowCoreThreadTimeOut(true);
+        }
+    }
+
+}
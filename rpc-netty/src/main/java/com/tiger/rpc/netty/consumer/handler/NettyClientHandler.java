@@ -1,49 +1,311 @@
 package com.tiger.rpc.netty.consumer.handler;
 
+import com.tiger.rpc.common.enums.ProtocolTypeEnum;
+import com.tiger.rpc.netty.consumer.NettyClientTransport;
+import com.tiger.rpc.netty.consumer.PendingCallRegistry;
+import com.tiger.rpc.netty.consumer.RequestBatcher;
+import com.tiger.rpc.netty.consumer.RpcFuture;
+import com.tiger.rpc.netty.consumer.StreamIterator;
+import com.tiger.rpc.netty.invoker.InvokerIds;
+import com.tiger.rpc.netty.invoker.MethodDictionary;
+import com.tiger.rpc.netty.packet.BatchResponsePacket;
+import com.tiger.rpc.netty.packet.HandshakePacket;
+import com.tiger.rpc.netty.packet.HeartbeatPacket;
+import com.tiger.rpc.netty.packet.RequestPacket;
 import com.tiger.rpc.netty.packet.ResponsePacket;
+import com.tiger.rpc.netty.packet.RpcPacket;
+import com.tiger.rpc.netty.packet.StreamPacket;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.timeout.IdleState;
+import io.netty.handler.timeout.IdleStateEvent;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
+import java.lang.reflect.Method;
+import java.net.SocketException;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 
 /**
  * @ClassName: NettyClientHandler.java
  *
- * @Description: 客户端处理器
+ * @Description: 客户端处理器，每个channel一个实例
+ *              连接建立后握手获取方法字典，请求按字典中的方法索引描述方法
+ *              空闲时发送心跳，心跳超时的连接标记为不健康并关闭
+ *              流式调用的数据块按请求编号分发给对应的迭代器
  *
  * @Author: Tiger
  *
  * @Date: 2021/3/30
  */
 @Slf4j
-public class NettyClientHandler extends SimpleChannelInboundHandler<ResponsePacket> {
+public class NettyClientHandler extends SimpleChannelInboundHandler<RpcPacket> {
 
     /**
-     * 响应包缓存
+     * 等待响应的调用：请求编号 <---> 调用结果future
+     * 同一个channel上可并发多个请求，通过请求编号关联响应
      */
-    public static ConcurrentHashMap<String, ResponsePacket> waitingRPC = new ConcurrentHashMap<>();
+    @Getter
+    private final PendingCallRegistry registry = new PendingCallRegistry();
+
+    /**
+     * provider下发的方法字典，握手完成前为null
+     */
+    @Getter
+    private volatile MethodDictionary dictionary;
+
+    /**
+     * 最后读写时间(毫秒)
+     */
+    @Getter
+    private volatile long lastActivity = System.currentTimeMillis();
+
+    /**
+     * 是否健康：已发送ping但一个心跳间隔内未收到任何数据时为false
+     */
+    @Getter
+    private volatile boolean healthy = true;
+
+    /**
+     * 是否在等待pong，仅在io线程上读写
+     */
+    private boolean awaitingPong = false;
+
+    /**
+     * 进行中的流式调用：请求编号 <---> 迭代器
+     */
+    @Getter
+    private final Map<Long, StreamIterator> streams = new ConcurrentHashMap<>();
+
+    /**
+     * 请求合并，首次批量调用时创建
+     */
+    private volatile RequestBatcher batcher;
+
+    /**
+     * 等待channel可写的锁
+     */
+    private final Object writableLock = new Object();
+
+    /**
+     * 获取请求合并，不存在时按传输资源的批量配置创建
+     * @param channel   所属channel
+     * @param timeout   批量调用超时时间(毫秒)
+     * @return
+     */
+    public RequestBatcher batcher(Channel channel, int timeout) {
+        RequestBatcher current = this.batcher;
+        if (current == null) {
+            synchronized (this) {
+                if (batcher == null) {
+                    NettyClientTransport transport = NettyClientTransport.getInstance();
+                    batcher = new RequestBatcher(channel, registry, transport.getBatchMaxSize(), transport.getBatchWindowMicros(),
+                            transport.isBatchParallel(), timeout);
+                }
+                current = batcher;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 记录写入活动
+     */
+    public void touch() {
+        lastActivity = System.currentTimeMillis();
+    }
+
+    /**
+     * 连接建立后发送握手包，获取方法字典
+     * @param ctx
+     * @throws Exception
+     */
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        HandshakePacket handshake = new HandshakePacket();
+        handshake.setProtocolType(ProtocolTypeEnum.NETTY);
+        ctx.writeAndFlush(handshake);
+        ctx.fireChannelActive();
+    }
+
+    /**
+     * 填充请求包的方法描述
+     *          1.握手完成且provider有该方法：只携带方法索引
+     *          2.握手未完成：携带服务编号/方法编号
+     *          3.握手完成但字典中无该方法(如provider运行时新增服务)：携带完整描述(类名、方法名、参数类型)
+     * @param requestRpc    请求包
+     * @param method    接口方法
+     */
+    public void describe(RequestPacket requestRpc, Method method) {
+        long key = InvokerIds.key(method);
+        MethodDictionary current = this.dictionary;
+        if (current == null) {
+            requestRpc.setServiceId(InvokerIds.serviceId(key));
+            requestRpc.setMethodId(InvokerIds.methodId(key));
+            return;
+        }
+        int index = current.indexOf(key);
+        if (index > 0) {
+            requestRpc.setMethodIndex(index);
+        } else {
+            requestRpc.setClassName(InvokerIds.serviceName(method.getDeclaringClass()));
+            requestRpc.setMethodName(method.getName());
+            requestRpc.setParamType(method.getParameterTypes());
+        }
+    }
 
     @Override
-    protected void channelRead0(ChannelHandlerContext channelHandlerContext, ResponsePacket responseRpc) throws Exception {
+    protected void channelRead0(ChannelHandlerContext channelHandlerContext, RpcPacket packet) throws Exception {
+        lastActivity = System.currentTimeMillis();
+        //收到任意数据，连接存活
+        awaitingPong = false;
+        if (packet instanceof HeartbeatPacket) {
+            return;
+        }
+        if (packet instanceof StreamPacket) {
+            //流式响应数据块
+            StreamIterator stream = streams.get(packet.getRequestId());
+            if (stream != null) {
+                stream.onChunk((StreamPacket) packet);
+            } else if (log.isDebugEnabled()) {
+                log.debug("No stream[requestId={}] found, chunk dropped.", packet.getRequestId());
+            }
+            return;
+        }
+        if (packet instanceof BatchResponsePacket) {
+            //批量响应，完成批量调用
+            RpcFuture future = registry.remove(packet.getRequestId());
+            if (future != null) {
+                future.complete(packet);
+            } else {
+                log.warn("No cached batch response[requestId={}] found.", packet.getRequestId());
+            }
+            return;
+        }
+        if (packet instanceof HandshakePacket) {
+            //握手响应，构建方法字典
+            this.dictionary = new MethodDictionary(((HandshakePacket) packet).getMethodKeys());
+            log.debug("Handshake with {} completed, {} methods", channelHandlerContext.channel().remoteAddress(), dictionary.size());
+            return;
+        }
+        ResponsePacket responseRpc = (ResponsePacket) packet;
         /**
          * 回写调用结果 & 异常信息
          */
-        ResponsePacket cachedResponseRpc = waitingRPC.get(responseRpc.getRequestId());
-        if (cachedResponseRpc != null) {
-            synchronized (cachedResponseRpc) {
-                //加对象锁，设置属性，并唤醒wait对象线程，继续执行代码
-                cachedResponseRpc.setReturnedFlag(true);
-                cachedResponseRpc.setThrowable(responseRpc.getThrowable());
-                cachedResponseRpc.setResult(responseRpc.getResult());
-                cachedResponseRpc.notify();
+        RpcFuture future = registry.remove(responseRpc.getRequestId());
+        StreamIterator stream;
+        if (future != null) {
+            //完成future，唤醒同步等待线程或者触发异步回调
+            if (responseRpc.getThrowable() != null) {
+                future.completeExceptionally(responseRpc.getThrowable());
+            } else {
+                future.complete(responseRpc.getResult());
             }
+        } else if ((stream = streams.get(responseRpc.getRequestId())) != null) {
+            //流式调用在开始迭代前失败(服务未找到、繁忙、方法异常)
+            stream.fail(responseRpc.getThrowable());
         } else {
             log.warn("No cached response[requestId={}, protocolType={}] found.", responseRpc.getRequestId(), responseRpc.getProtocolType());
         }
     }
 
+    /**
+     * 连接断开，等待中的调用立即失败，不再等待超时
+     * @param ctx
+     * @throws Exception
+     */
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        synchronized (writableLock) {
+            writableLock.notifyAll();
+        }
+        SocketException closed = new SocketException(String.format("Channel[%s] closed", ctx.channel().remoteAddress()));
+        int failed = registry.failAll(closed);
+        for (StreamIterator stream : streams.values()) {
+            stream.fail(closed);
+        }
+        if (failed > 0) {
+            log.warn("Channel[{}] closed, {} pending calls failed", ctx.channel().remoteAddress(), failed);
+        }
+        ctx.fireChannelInactive();
+    }
+
+    /**
+     * 等待channel可写(出站缓冲回落到低水位以下)
+     *          io线程上调用时不等待，避免阻塞刷出
+     * @param channel
+     * @param millis    最长等待时间(毫秒)，0为一直等待到可写或连接断开
+     * @return  是否可写
+     * @throws InterruptedException
+     */
+    public boolean awaitWritable(Channel channel, long millis) throws InterruptedException {
+        if (channel.isWritable()) {
+            return true;
+        }
+        if (channel.eventLoop().inEventLoop()) {
+            return false;
+        }
+        long deadline = millis > 0 ? System.currentTimeMillis() + millis : Long.MAX_VALUE;
+        synchronized (writableLock) {
+            while (!channel.isWritable()) {
+                long wait = deadline - System.currentTimeMillis();
+                if (!channel.isActive() || wait <= 0) {
+                    return false;
+                }
+                writableLock.wait(wait);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 可写状态变化：恢复可写时唤醒等待的调用线程
+     * @param ctx
+     * @throws Exception
+     */
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (ctx.channel().isWritable()) {
+            synchronized (writableLock) {
+                writableLock.notifyAll();
+            }
+        }
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    /**
+     * 空闲心跳(开启心跳时)
+     *          1.读/写空闲时发送ping
+     *          2.ping发出后一个心跳间隔内未收到任何数据(pong或响应)：标记不健康并关闭连接，等待中的调用立即失败，由连接池/连接管理重建
+     * @param ctx
+     * @param evt
+     * @throws Exception
+     */
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (!(evt instanceof IdleStateEvent)) {
+            ctx.fireUserEventTriggered(evt);
+            return;
+        }
+        IdleStateEvent event = (IdleStateEvent) evt;
+        if (awaitingPong) {
+            //连续第二次读空闲：ping发出后至少一个心跳间隔未收到数据
+            if (event.state() == IdleState.READER_IDLE && !event.isFirst()) {
+                healthy = false;
+                log.warn("Channel[{}] heartbeat timeout, close it", ctx.channel().remoteAddress());
+                ctx.close();
+            }
+            return;
+        }
+        HeartbeatPacket ping = new HeartbeatPacket();
+        ping.setProtocolType(ProtocolTypeEnum.NETTY);
+        ctx.writeAndFlush(ping);
+        awaitingPong = true;
+    }
+
     @Override
     public void channelRegistered(ChannelHandlerContext ctx) throws Exception {
         ctx.fireChannelRegistered();
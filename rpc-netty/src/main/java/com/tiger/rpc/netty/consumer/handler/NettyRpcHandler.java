@@ -0,0 +1,235 @@
+package com.tiger.rpc.netty.consumer.handler;
+
+import com.tiger.rpc.common.annotation.OneWay;
+import com.tiger.rpc.common.config.ReferenceConfig;
+import com.tiger.rpc.common.consumer.handler.DefaultRpcHandler;
+import com.tiger.rpc.common.utils.Constants;
+import com.tiger.rpc.netty.compress.Compressor;
+import com.tiger.rpc.netty.compress.CompressorFactory;
+import com.tiger.rpc.netty.consumer.ChannelManager;
+import com.tiger.rpc.netty.consumer.NSocket;
+import com.tiger.rpc.netty.consumer.NettyServiceClient;
+import com.tiger.rpc.netty.consumer.NettyServiceDiscovery;
+import com.tiger.rpc.netty.serializer.SerializerFactory;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.pool2.impl.GenericKeyedObjectPool;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.SocketException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * @ClassName: NettyRpcHandler.java
+ *
+ * @Description: netty服务代理公共处理：连接来源(连接管理/连接池)、异常处理、远程客户端构造(序列化协商、单向调用、批量、压缩)
+ *              服务发现代理与指定机器代理共用，新增协议选项只在这里实现
+ *
+ * @Author: Tiger
+ *
+ * @Date: 2021/7/24
+ */
+@Slf4j
+public abstract class NettyRpcHandler extends DefaultRpcHandler<NSocket> implements InvocationHandler, Closeable {
+
+    /**
+     * 多路复用的连接管理，设置后优先于连接池使用
+     */
+    @Getter
+    @Setter
+    private ChannelManager channelManager;
+
+    /**
+     * 是否批量调用：同一连接上时间窗口内的调用合并为一帧
+     */
+    @Getter
+    @Setter
+    private boolean batch;
+
+    protected NettyRpcHandler(){
+        super();
+    }
+
+    protected NettyRpcHandler(GenericKeyedObjectPool<String, NSocket> pool){
+        super(pool);
+    }
+
+    protected NettyRpcHandler(NettyServiceDiscovery discovery){
+        super(discovery);
+    }
+
+    /**
+     * 异常处理
+     * tSocket异常时，需要校验channel
+     * 参数异常时，直接退出，不需要重试
+     * @param exception
+     * @param counter
+     * @param key
+     * @param tSocket
+     * @throws Exception
+     */
+    @Override
+    protected Throwable processException(Throwable exception, int counter, String key, NSocket tSocket) {
+        if(exception instanceof SocketException){
+            //tSocket异常，关闭channel，加速回收
+            if(tSocket != null && tSocket.isOpen()){
+                log.warn("Close the unreachable socket[{}] of key[{}]", tSocket, key);
+                tSocket.close();
+                tSocket = null;
+            }
+        }
+        if(exception instanceof IllegalArgumentException){
+            //参数异常，不重试，返回异常
+            return exception;
+        }
+        if(exception instanceof InvocationTargetException){
+            //反射异常，获取目标异常处理
+            Throwable targetException = ((InvocationTargetException) exception).getTargetException();
+            if(targetException instanceof IllegalArgumentException){
+                //参数异常则返回目标异常
+                return targetException;
+            } else if (targetException instanceof SocketException){
+                //tSocket异常引起的反射异常，校验tSocket，关闭tSocket，加速回收
+                if(tSocket != null && tSocket.isOpen()){
+                    log.warn("Close the unreachable socket[{}] of key[{}]", tSocket.getLocalSocketAddress(), key);
+                    tSocket.close();
+                    tSocket = null;
+                }
+            }
+        }
+        //重试比较
+        if(counter >= super.getRetry()){
+            //超过重试次数的，则抛出异常
+            if(exception instanceof InvocationTargetException){
+                //反射异常，抛出目标异常
+                return ((InvocationTargetException) exception).getTargetException();
+            }
+            //返回异常
+            return exception;
+        }
+        //返回null
+        return null;
+    }
+
+    @Override
+    protected NSocket borrowSocket(String key) throws Exception {
+        //多路复用连接无需借用，直接选择
+        return channelManager != null ? channelManager.acquire(key) : super.borrowSocket(key);
+    }
+
+    @Override
+    protected NSocket borrowSocket(String key, long remainingMillis) throws Exception {
+        //多路复用连接首次建连时，等待不超过调用的剩余时间
+        return channelManager != null ? channelManager.acquire(key, remainingMillis) : super.borrowSocket(key);
+    }
+
+    @Override
+    protected void returnSocket(String key, NSocket tSocket) {
+        if (channelManager == null) {
+            super.returnSocket(key, tSocket);
+        }
+    }
+
+    @Override
+    protected Object getClient(NSocket tSocket, Method method, long remainingMillis) throws Exception {
+        NettyServiceClient nettyClient = (NettyServiceClient) getClient(tSocket, method);
+        //单次尝试的等待时间不超过调用总超时的剩余时间
+        nettyClient.setCallTimeout(remainingMillis);
+        return nettyClient;
+    }
+
+    @Override
+    protected Object getClient(NSocket tSocket, Method method) throws Exception {
+        //设置channel，返回远程客户端
+        NettyServiceClient nettyClient = new NettyServiceClient();
+        nettyClient.setNSocket(tSocket);
+        //设置协商后的序列化方式
+        nettyClient.setSerializerId(negotiateSerializer(tSocket, method));
+        //单向调用
+        nettyClient.setOneWay(isOneWay(method));
+        //批量调用
+        nettyClient.setBatch(batch);
+        //请求压缩
+        applyCompression(nettyClient, method);
+        return nettyClient;
+    }
+
+    /**
+     * 按引用配置设置请求压缩，无服务发现器时不压缩
+     * @param nettyClient
+     * @param method
+     */
+    private void applyCompression(NettyServiceClient nettyClient, Method method) {
+        if (super.getHelper() == null || !(super.getHelper().getRegister() instanceof NettyServiceDiscovery)) {
+            return;
+        }
+        ReferenceConfig config = ((NettyServiceDiscovery) super.getHelper().getRegister()).getConfbyInterfaceClass(method.getDeclaringClass());
+        Compressor compressor = config == null ? null : CompressorFactory.getByName(config.getCompression());
+        if (compressor != null) {
+            nettyClient.setCompressorId(compressor.getId());
+            nettyClient.setCompressThreshold(config.getCompressThreshold());
+        }
+    }
+
+    /**
+     * 是否单向调用：按引用配置判断，无服务发现器时只按{@link OneWay}注解判断
+     * @param method
+     * @return
+     */
+    private boolean isOneWay(Method method) {
+        if (method.getReturnType() != void.class) {
+            return false;
+        }
+        if (super.getHelper() == null || !(super.getHelper().getRegister() instanceof NettyServiceDiscovery)) {
+            return method.isAnnotationPresent(OneWay.class);
+        }
+        ReferenceConfig config = ((NettyServiceDiscovery) super.getHelper().getRegister()).getConfbyInterfaceClass(method.getDeclaringClass());
+        return config != null ? config.isOneWay(method) : method.isAnnotationPresent(OneWay.class);
+    }
+
+    /**
+     * 与provider协商序列化方式，无服务发现器时使用默认方式
+     * @param tSocket
+     * @param method
+     * @return
+     */
+    private byte negotiateSerializer(NSocket tSocket, Method method) {
+        if (super.getHelper() == null || !(super.getHelper().getRegister() instanceof NettyServiceDiscovery)) {
+            return SerializerFactory.getDefault().getId();
+        }
+        NettyServiceDiscovery discovery = (NettyServiceDiscovery) super.getHelper().getRegister();
+        return discovery.negotiateSerializer(discovery.getConfbyInterfaceClass(method.getDeclaringClass()),
+                tSocket.getHost() + Constants.HOST_PORT_SEPARATOR + tSocket.getPort());
+    }
+
+    @Override
+    protected Object callRemoteMethod(Object client, Method method, Object[] args) throws Throwable {
+        //client执行同步发送
+        return ((NettyServiceClient)client).syncSend(method, args);
+    }
+
+    @Override
+    protected CompletableFuture<Object> callRemoteAsync(Object client, Method method, Object[] args) {
+        //client执行异步发送，对冲调用使用
+        return ((NettyServiceClient)client).sendAsync(method, args);
+    }
+
+    @Override
+    protected void processFinally(String key, Object client, NSocket tSocket) {
+        log.debug("Release the current socket[{}] connected to provider[{}]",
+                tSocket.getLocalSocketAddress(), key);
+    }
+
+    @Override
+    public void close() throws IOException {
+        /**
+         * 置空参数，加速回收
+         */
+        super.close();
+    }
+}
@@ -0,0 +1,38 @@
+package com.tiger.rpc.netty.enums;
+
+/**
+ * @ClassName: BackpressureModeEnum.java
+ *
+ * @Description: consumer背压方式：channel出站缓冲超过高水位(不可写)时新请求的处理
+ *
+ * @Author: Tiger
+ *
+ * @Date: 2021/6/27
+ */
+public enum BackpressureModeEnum {
+
+    //等待channel可写，最长等待socket超时时间，超时后失败
+    WAIT("wait", "等待可写"),
+
+    //立即失败
+    FAIL_FAST("failFast", "立即失败"),
+
+    ;
+
+    private String value;
+    private String description;
+
+    BackpressureModeEnum(String value, String description) {
+        this.value = value;
+        this.description = description;
+    }
+
+    public String getValue() {
+        return this.value;
+    }
+
+    public String getDescription() {
+        return this.description;
+    }
+
+}
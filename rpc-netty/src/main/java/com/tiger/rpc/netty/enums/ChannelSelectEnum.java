@@ -0,0 +1,38 @@
+package com.tiger.rpc.netty.enums;
+
+/**
+ * @ClassName: ChannelSelectEnum.java
+ *
+ * @Description: 同一provider多个channel的选择方式
+ *
+ * @Author: Tiger
+ *
+ * @Date: 2021/6/22
+ */
+public enum ChannelSelectEnum {
+
+    //轮询
+    ROUND_ROBIN("roundRobin", "轮询"),
+
+    //在途调用最少
+    LEAST_PENDING("leastPending", "最少在途调用"),
+
+    ;
+
+    private String value;
+    private String description;
+
+    ChannelSelectEnum(String value, String description) {
+        this.value = value;
+        this.description = description;
+    }
+
+    public String getValue() {
+        return this.value;
+    }
+
+    public String getDescription() {
+        return this.description;
+    }
+
+}
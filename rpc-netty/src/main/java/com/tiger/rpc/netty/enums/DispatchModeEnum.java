@@ -0,0 +1,44 @@
+package com.tiger.rpc.netty.enums;
+
+/**
+ * @ClassName: DispatchModeEnum.java
+ *
+ * @Description: 服务端请求分发方式
+ *
+ * @Author: Tiger
+ *
+ * @Date: 2021/6/14
+ */
+public enum DispatchModeEnum {
+
+    //在io线程上直接执行，适合全部为快速方法的服务
+    INLINE("inline", "io线程执行"),
+
+    //所有服务共用一个有界线程池
+    SHARED("shared", "共享业务线程池"),
+
+    //按服务使用独立线程池，未配置的服务使用共享线程池
+    PER_SERVICE("perService", "按服务独立线程池"),
+
+    //每个请求一个虚拟线程(jdk21+)，不可用时回退到共享线程池
+    VIRTUAL("virtual", "虚拟线程"),
+
+    ;
+
+    private String value;
+    private String description;
+
+    DispatchModeEnum(String value, String description) {
+        this.value = value;
+        this.description = description;
+    }
+
+    public String getValue() {
+        return this.value;
+    }
+
+    public String getDescription() {
+        return this.description;
+    }
+
+}
@@ -0,0 +1,41 @@
+package com.tiger.rpc.netty.enums;
+
+/**
+ * @ClassName: MessageDirectionEnum.java
+ *
+ * @Description: 帧消息传输方向
+ *
+ * @Author: Tiger
+ *
+ * @Date: 2021/7/4
+ */
+public enum MessageDirectionEnum {
+
+    //consumer发往provider
+    TO_PROVIDER("toProvider", "consumer到provider"),
+
+    //provider发往consumer
+    TO_CONSUMER("toConsumer", "provider到consumer"),
+
+    //双向(控制消息)
+    BOTH("both", "双向"),
+
+    ;
+
+    private String value;
+    private String description;
+
+    MessageDirectionEnum(String value, String description) {
+        this.value = value;
+        this.description = description;
+    }
+
+    public String getValue() {
+        return this.value;
+    }
+
+    public String getDescription() {
+        return this.description;
+    }
+
+}
@@ -0,0 +1,122 @@
+package com.tiger.rpc.netty.enums;
+
+import com.tiger.rpc.netty.packet.BatchRequestPacket;
+import com.tiger.rpc.netty.packet.BatchResponsePacket;
+import com.tiger.rpc.netty.packet.CancelPacket;
+import com.tiger.rpc.netty.packet.HandshakePacket;
+import com.tiger.rpc.netty.packet.HeartbeatPacket;
+import com.tiger.rpc.netty.packet.RequestPacket;
+import com.tiger.rpc.netty.packet.ResponsePacket;
+import com.tiger.rpc.netty.packet.RpcPacket;
+import com.tiger.rpc.netty.packet.StreamCreditPacket;
+import com.tiger.rpc.netty.packet.StreamPacket;
+
+/**
+ * @ClassName: MessageTypeEnum.java
+ *
+ * @Description: 帧消息类型，写入帧头
+ *
+ * @Author: Tiger
+ *
+ * @Date: 2021/6/10
+ */
+public enum MessageTypeEnum {
+
+    REQUEST((byte) 1, "请求", RequestPacket.class, MessageDirectionEnum.TO_PROVIDER),
+
+    RESPONSE((byte) 2, "响应", ResponsePacket.class, MessageDirectionEnum.TO_CONSUMER),
+
+    HANDSHAKE((byte) 3, "握手", HandshakePacket.class, MessageDirectionEnum.BOTH),
+
+    HEARTBEAT((byte) 4, "心跳", HeartbeatPacket.class, MessageDirectionEnum.BOTH),
+
+    BATCH_REQUEST((byte) 5, "批量请求", BatchRequestPacket.class, MessageDirectionEnum.TO_PROVIDER),
+
+    BATCH_RESPONSE((byte) 6, "批量响应", BatchResponsePacket.class, MessageDirectionEnum.TO_CONSUMER),
+
+    STREAM((byte) 7, "流式响应数据", StreamPacket.class, MessageDirectionEnum.TO_CONSUMER),
+
+    STREAM_CREDIT((byte) 8, "流式响应额度", StreamCreditPacket.class, MessageDirectionEnum.TO_PROVIDER),
+
+    CANCEL((byte) 9, "取消请求", CancelPacket.class, MessageDirectionEnum.TO_PROVIDER),
+
+    ;
+
+    private byte value;
+    private String description;
+
+    /**
+     * 消息对应的数据包类型
+     */
+    private Class<? extends RpcPacket> packetClass;
+
+    /**
+     * 传输方向：控制消息双向传输，编解码器总是接收
+     */
+    private MessageDirectionEnum direction;
+
+    MessageTypeEnum(byte value, String description, Class<? extends RpcPacket> packetClass, MessageDirectionEnum direction) {
+        this.value = value;
+        this.description = description;
+        this.packetClass = packetClass;
+        this.direction = direction;
+    }
+
+    public byte getValue() {
+        return this.value;
+    }
+
+    public String getDescription() {
+        return this.description;
+    }
+
+    public Class<? extends RpcPacket> getPacketClass() {
+        return this.packetClass;
+    }
+
+    public MessageDirectionEnum getDirection() {
+        return this.direction;
+    }
+
+    public boolean isControl() {
+        return this.direction == MessageDirectionEnum.BOTH;
+    }
+
+    /**
+     * 以该类型创建的编解码器是否处理指定类型：同方向的消息及控制消息
+     * @param type
+     * @return
+     */
+    public boolean accepts(MessageTypeEnum type) {
+        return type != null && (type.direction == this.direction || type.isControl());
+    }
+
+    /**
+     * 根据帧头值获取类型
+     * @param value
+     * @return 不存在时返回null
+     */
+    public static MessageTypeEnum valueOf(byte value) {
+        for (MessageTypeEnum type : values()) {
+            if (type.value == value) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 根据数据包类型获取消息类型
+     * @param packetClass
+     * @return 不存在时返回null
+     */
+    public static MessageTypeEnum valueOf(Class<?> packetClass) {
+        for (MessageTypeEnum type : values()) {
+            if (type.packetClass.isAssignableFrom(packetClass)) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+}
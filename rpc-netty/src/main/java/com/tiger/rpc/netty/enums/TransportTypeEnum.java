@@ -0,0 +1,40 @@
+package com.tiger.rpc.netty.enums;
+
+/**
+ * @ClassName: TransportTypeEnum.java
+ *
+ * @Description: netty传输类型
+ *
+ * @Author: Tiger
+ *
+ * @Date: 2021/6/6
+ */
+public enum TransportTypeEnum {
+
+    //native库可加载时使用epoll，否则使用nio
+    AUTO("auto", "自动选择"),
+
+    NIO("nio", "jdk nio"),
+
+    //仅linux可用
+    EPOLL("epoll", "native epoll"),
+
+    ;
+
+    private String value;
+    private String description;
+
+    TransportTypeEnum(String value, String description) {
+        this.value = value;
+        this.description = description;
+    }
+
+    public String getValue() {
+        return this.value;
+    }
+
+    public String getDescription() {
+        return this.description;
+    }
+
+}
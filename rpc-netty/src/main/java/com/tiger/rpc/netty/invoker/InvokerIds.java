@@ -0,0 +1,113 @@
+package com.tiger.rpc.netty.invoker;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @ClassName: InvokerIds.java
+ *
+ * @Description: 服务/方法编号
+ *              1.服务编号：服务名(接口外层类名)的hash
+ *              2.方法编号：方法签名(方法名 + 参数类型)的hash
+ *              3.编号只依赖名称，consumer/provider各自计算，结果一致；0保留为未设置
+ *
+ * @Author: Tiger
+ *
+ * @Date: 2021/6/19
+ */
+public final class InvokerIds {
+
+    /**
+     * 方法 <---> 服务编号(高32位) + 方法编号(低32位)，consumer端缓存，避免每次调用计算
+     */
+    private static final Map<Method, Long> METHOD_KEYS = new ConcurrentHashMap<>();
+
+    private InvokerIds() {
+    }
+
+    /**
+     * 服务名：接口外层类名，与thrift生成的Iface外层类一致
+     * @param interfaceClass
+     * @return
+     */
+    public static String serviceName(Class<?> interfaceClass) {
+        Class<?> enClosedClazz = interfaceClass.getEnclosingClass();
+        enClosedClazz = enClosedClazz == null ? interfaceClass : enClosedClazz;
+        return enClosedClazz.getName();
+    }
+
+    /**
+     * 服务编号
+     * @param serviceName   服务名
+     * @return
+     */
+    public static int serviceId(String serviceName) {
+        return nonZero(serviceName.hashCode());
+    }
+
+    /**
+     * 方法编号
+     * @param methodName    方法名
+     * @param paramTypes    参数类型
+     * @return
+     */
+    public static int methodId(String methodName, Class<?>[] paramTypes) {
+        return nonZero(signature(methodName, paramTypes).hashCode());
+    }
+
+    /**
+     * 方法签名：name(type1,type2)
+     * @param methodName
+     * @param paramTypes
+     * @return
+     */
+    public static String signature(String methodName, Class<?>[] paramTypes) {
+        StringBuilder builder = new StringBuilder(methodName).append('(');
+        if (paramTypes != null) {
+            for (int i = 0; i < paramTypes.length; i++) {
+                if (i > 0) {
+                    builder.append(',');
+                }
+                builder.append(paramTypes[i].getName());
+            }
+        }
+        return builder.append(')').toString();
+    }
+
+    /**
+     * 获取方法的编号组合，consumer调用时使用
+     * @param method    接口方法
+     * @return  服务编号(高32位) + 方法编号(低32位)
+     */
+    public static long key(Method method) {
+        Long key = METHOD_KEYS.get(method);
+        if (key == null) {
+            key = METHOD_KEYS.computeIfAbsent(method, m -> key(serviceId(serviceName(m.getDeclaringClass())),
+                    methodId(m.getName(), m.getParameterTypes())));
+        }
+        return key;
+    }
+
+    /**
+     * 组合服务编号和方法编号
+     * @param serviceId
+     * @param methodId
+     * @return
+     */
+    public static long key(int serviceId, int methodId) {
+        return ((long) serviceId << 32) | (methodId & 0xFFFFFFFFL);
+    }
+
+    public static int serviceId(long key) {
+        return (int) (key >>> 32);
+    }
+
+    public static int methodId(long key) {
+        return (int) key;
+    }
+
+    private static int nonZero(int hash) {
+        return hash == 0 ? 1 : hash;
+    }
+}
@@ -0,0 +1,42 @@
+package com.tiger.rpc.netty.invoker;
+
+import io.netty.util.collection.LongObjectHashMap;
+
+/**
+ * @ClassName: MethodDictionary.java
+ *
+ * @Description: consumer端方法字典，每个连接一份，由握手时provider下发的方法编号组合构建，构建后只读
+ *
+ * @Author: Tiger
+ *
+ * @Date: 2021/6/20
+ */
+public final class MethodDictionary {
+
+    /**
+     * 服务编号(高32位) + 方法编号(低32位) <---> 方法索引
+     */
+    private final LongObjectHashMap<Integer> indexes;
+
+    public MethodDictionary(long[] methodKeys) {
+        int size = methodKeys == null ? 0 : methodKeys.length;
+        this.indexes = new LongObjectHashMap<>(Math.max(size, 8));
+        for (int i = 0; i < size; i++) {
+            indexes.put(methodKeys[i], Integer.valueOf(i + 1));
+        }
+    }
+
+    /**
+     * 获取方法索引
+     * @param key   服务编号(高32位) + 方法编号(低32位)
+     * @return  provider未注册该方法时返回0
+     */
+    public int indexOf(long key) {
+        Integer index = indexes.get(key);
+        return index == null ? 0 : index;
+    }
+
+    public int size() {
+        return indexes.size();
+    }
+}
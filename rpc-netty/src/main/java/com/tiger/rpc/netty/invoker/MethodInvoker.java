@@ -0,0 +1,175 @@
+package com.tiger.rpc.netty.invoker;
+
+import lombok.Getter;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Iterator;
+
+/**
+ * @ClassName: MethodInvoker.java
+ *
+ * @Description: 预编译的方法调用器，注册时生成，请求时直接调用
+ *              1.绑定服务实例的MethodHandle，参数展开为Object[]，返回值统一为Object
+ *              2.接口不可访问时(非public)，回退到反射调用
+ *              3.方法抛出的异常包装为InvocationTargetException，与反射调用一致
+ *              4.调用前按参数类型校验，类型不匹配时交给反射调用处理(基本类型拓宽或抛出IllegalArgumentException)，与反射调用一致
+ *
+ * @Author: Tiger
+ *
+ * @Date: 2021/6/19
+ */
+public final class MethodInvoker {
+
+    private static final Object[] EMPTY_ARGS = new Object[0];
+
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object[].class);
+
+    /**
+     * 服务编号
+     */
+    @Getter
+    private final int serviceId;
+
+    /**
+     * 方法编号
+     */
+    @Getter
+    private final int methodId;
+
+    /**
+     * 服务名(接口外层类名)
+     */
+    @Getter
+    private final String serviceName;
+
+    /**
+     * 接口方法
+     */
+    @Getter
+    private final Method method;
+
+    /**
+     * 是否流式方法：返回{@link Iterator}，provider分块回写
+     */
+    @Getter
+    private final boolean streaming;
+
+    /**
+     * 服务实例
+     */
+    private final Object target;
+
+    /**
+     * (Object[])Object，为null时使用反射调用
+     */
+    private final MethodHandle handle;
+
+    /**
+     * 参数类型
+     */
+    private final Class<?>[] paramTypes;
+
+    /**
+     * 参数类型，基本类型为其包装类型
+     */
+    private final Class<?>[] argTypes;
+
+    MethodInvoker(int serviceId, int methodId, String serviceName, Method method, Object target) {
+        this.serviceId = serviceId;
+        this.methodId = methodId;
+        this.serviceName = serviceName;
+        this.method = method;
+        this.streaming = isStreaming(method);
+        this.target = target;
+        this.handle = newHandle(method, target);
+        this.paramTypes = method.getParameterTypes();
+        this.argTypes = boxedTypes(paramTypes);
+    }
+
+    /**
+     * 是否流式方法：声明返回类型为{@link Iterator}
+     * @param method
+     * @return
+     */
+    public static boolean isStreaming(Method method) {
+        return method.getReturnType() == Iterator.class;
+    }
+
+    /**
+     * 执行方法
+     * @param args  参数
+     * @return  返回值，void方法返回null
+     * @throws InvocationTargetException    方法抛出的异常
+     * @throws IllegalAccessException   反射调用无权限
+     */
+    public Object invoke(Object[] args) throws InvocationTargetException, IllegalAccessException {
+        if (args == null) {
+            args = EMPTY_ARGS;
+        }
+        if (handle == null) {
+            return method.invoke(target, args);
+        }
+        if (args.length != method.getParameterCount()) {
+            throw new IllegalArgumentException(String.format("Method[%s] expects %d arguments, but %d given",
+                    method.getName(), method.getParameterCount(), args.length));
+        }
+        if (!matches(args)) {
+            //参数类型不匹配：按反射语义处理，基本类型拓宽或抛出IllegalArgumentException，不作为方法异常
+            return method.invoke(target, args);
+        }
+        try {
+            return (Object) handle.invokeExact(args);
+        } catch (Throwable e) {
+            //参数已校验，此处只有方法抛出的异常
+            throw new InvocationTargetException(e);
+        }
+    }
+
+    /**
+     * 参数是否与参数类型完全匹配：基本类型参数不能为null，其他参数为null或该类型实例
+     * @param args
+     * @return
+     */
+    private boolean matches(Object[] args) {
+        for (int i = 0; i < args.length; i++) {
+            Object arg = args[i];
+            if (arg == null ? paramTypes[i].isPrimitive() : !argTypes[i].isInstance(arg)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 参数类型，基本类型转换为包装类型
+     * @param types
+     * @return
+     */
+    private static Class<?>[] boxedTypes(Class<?>[] types) {
+        Class<?>[] boxed = new Class<?>[types.length];
+        for (int i = 0; i < types.length; i++) {
+            boxed[i] = types[i].isPrimitive() ? MethodType.methodType(types[i]).wrap().returnType() : types[i];
+        }
+        return boxed;
+    }
+
+    /**
+     * 生成调用句柄
+     * @param method
+     * @param target
+     * @return  不可访问时返回null
+     */
+    private static MethodHandle newHandle(Method method, Object target) {
+        try {
+            return MethodHandles.publicLookup().unreflect(method).bindTo(target)
+                    .asSpreader(Object[].class, method.getParameterCount()).asType(INVOKER_TYPE);
+        } catch (IllegalAccessException e) {
+            method.setAccessible(true);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.tiger.rpc.netty.invoker;
+
+import com.tiger.rpc.netty.packet.RequestPacket;
+import io.netty.util.collection.LongObjectHashMap;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @ClassName: ServiceInvokerRegistry.java
+ *
+ * @Description: 服务方法调用器注册表，provider端所有channel公用
+ *              1.注册时按接口方法生成调用器，编号冲突时拒绝注册
+ *              2.读多写少：写时复制，读取无锁，key为基本类型long，查找不装箱
+ *              3.按注册顺序为方法分配索引(从1开始)，握手时下发方法字典，之后请求按索引直接定位调用器
+ *
+ * @Author: Tiger
+ *
+ * @Date: 2021/6/19
+ */
+@Slf4j
+public class ServiceInvokerRegistry {
+
+    /**
+     * 服务编号(高32位) + 方法编号(低32位) <---> 调用器
+     */
+    private volatile LongObjectHashMap<MethodInvoker> invokers = new LongObjectHashMap<>();
+
+    /**
+     * 方法索引 <---> 调用器，下标0不使用
+     */
+    private volatile MethodInvoker[] indexed = new MethodInvoker[1];
+
+    /**
+     * 方法字典：第i个元素为索引i + 1的方法编号组合
+     */
+    private volatile long[] dictionary = new long[0];
+
+    /**
+     * 注册服务所有接口方法
+     * @param interfaceClass    服务接口
+     * @param ref   服务实例
+     */
+    public synchronized void register(Class<?> interfaceClass, Object ref) {
+        String serviceName = InvokerIds.serviceName(interfaceClass);
+        int serviceId = InvokerIds.serviceId(serviceName);
+        LongObjectHashMap<MethodInvoker> copy = new LongObjectHashMap<>(invokers.size() + interfaceClass.getMethods().length);
+        copy.putAll(invokers);
+        List<Long> keys = new ArrayList<>(dictionary.length + interfaceClass.getMethods().length);
+        for (long key : dictionary) {
+            keys.add(key);
+        }
+        for (Method method : interfaceClass.getMethods()) {
+            if (Modifier.isStatic(method.getModifiers())) {
+                continue;
+            }
+            int methodId = InvokerIds.methodId(method.getName(), method.getParameterTypes());
+            long key = InvokerIds.key(serviceId, methodId);
+            MethodInvoker exists = copy.get(key);
+            if (exists != null && !(exists.getServiceName().equals(serviceName) && sameSignature(exists.getMethod(), method))) {
+                throw new IllegalStateException(String.format("Method id conflict: %s.%s and %s.%s", exists.getServiceName(),
+                        InvokerIds.signature(exists.getMethod().getName(), exists.getMethod().getParameterTypes()),
+                        serviceName, InvokerIds.signature(method.getName(), method.getParameterTypes())));
+            }
+            if (exists == null) {
+                //新方法追加到字典末尾，已有方法保持原索引
+                keys.add(key);
+            }
+            copy.put(key, new MethodInvoker(serviceId, methodId, serviceName, method, ref));
+        }
+        long[] newDictionary = new long[keys.size()];
+        MethodInvoker[] newIndexed = new MethodInvoker[keys.size() + 1];
+        for (int i = 0; i < newDictionary.length; i++) {
+            newDictionary[i] = keys.get(i);
+            newIndexed[i + 1] = copy.get(newDictionary[i]);
+        }
+        this.invokers = copy;
+        this.indexed = newIndexed;
+        this.dictionary = newDictionary;
+        log.debug("Service[{}] registered with id: {}", serviceName, serviceId);
+    }
+
+    /**
+     * 按编号查找调用器
+     * @param serviceId
+     * @param methodId
+     * @return  未注册时返回null
+     */
+    public MethodInvoker get(int serviceId, int methodId) {
+        return invokers.get(InvokerIds.key(serviceId, methodId));
+    }
+
+    /**
+     * 按方法索引查找调用器
+     * @param methodIndex
+     * @return  未注册时返回null
+     */
+    public MethodInvoker get(int methodIndex) {
+        MethodInvoker[] current = indexed;
+        return methodIndex > 0 && methodIndex < current.length ? current[methodIndex] : null;
+    }
+
+    /**
+     * 方法字典，握手时下发
+     * @return
+     */
+    public long[] getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * 查找请求对应的调用器：优先使用方法索引，其次使用编号，都未携带时按类名/方法名/参数类型查找
+     * @param requestRpc
+     * @return  未注册时返回null
+     */
+    public MethodInvoker get(RequestPacket requestRpc) {
+        if (requestRpc.getMethodIndex() > 0) {
+            return get(requestRpc.getMethodIndex());
+        }
+        if (requestRpc.getServiceId() != 0) {
+            return get(requestRpc.getServiceId(), requestRpc.getMethodId());
+        }
+        if (requestRpc.getClassName() == null || requestRpc.getMethodName() == null) {
+            return null;
+        }
+        MethodInvoker invoker = get(InvokerIds.serviceId(requestRpc.getClassName()),
+                InvokerIds.methodId(requestRpc.getMethodName(), requestRpc.getParamType()));
+        //hash相同时校验名称
+        return invoker != null && invoker.getServiceName().equals(requestRpc.getClassName())
+                && invoker.getMethod().getName().equals(requestRpc.getMethodName()) ? invoker : null;
+    }
+
+    private static boolean sameSignature(Method m1, Method m2) {
+        return m1.getName().equals(m2.getName()) && Arrays.equals(m1.getParameterTypes(), m2.getParameterTypes());
+    }
+}
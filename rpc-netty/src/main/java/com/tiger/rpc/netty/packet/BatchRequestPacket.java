@@ -0,0 +1,33 @@
+package com.tiger.rpc.netty.packet;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+import java.io.Serializable;
+
+/**
+ * @ClassName: BatchRequestPacket.java
+ *
+ * @Description: 批量请求包：同一连接上时间窗口内的多个调用合并为一帧
+ *              1.帧头请求编号为批量编号，单个请求不携带请求编号
+ *              2.provider按顺序回写{@link BatchResponsePacket}，响应与请求按位置对应
+ *
+ * @Author: Tiger
+ *
+ * @Date: 2021/7/3
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+public class BatchRequestPacket extends RpcPacket implements Serializable {
+
+    /**
+     * 请求列表
+     */
+    private RequestPacket[] requests;
+
+    /**
+     * 是否并行执行：true时每个请求单独分发到业务线程，否则在一个业务线程上顺序执行
+     */
+    private boolean parallel;
+
+}
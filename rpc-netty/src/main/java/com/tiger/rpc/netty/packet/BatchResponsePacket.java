@@ -0,0 +1,26 @@
+package com.tiger.rpc.netty.packet;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+import java.io.Serializable;
+
+/**
+ * @ClassName: BatchResponsePacket.java
+ *
+ * @Description: 批量响应包：与{@link BatchRequestPacket}的请求按位置对应，全部执行完成后一次回写
+ *
+ * @Author: Tiger
+ *
+ * @Date: 2021/7/3
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+public class BatchResponsePacket extends RpcPacket implements Serializable {
+
+    /**
+     * 响应列表
+     */
+    private ResponsePacket[] responses;
+
+}
@@ -0,0 +1,22 @@
+package com.tiger.rpc.netty.packet;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+import java.io.Serializable;
+
+/**
+ * @ClassName: CancelPacket.java
+ *
+ * @Description: 取消请求数据包：consumer等待超时 or 取消调用时发送，帧头请求编号为被取消的请求编号
+ *              provider跳过尚未执行的请求，中断正在执行的请求，不再回写响应
+ *
+ * @Author: Tiger
+ *
+ * @Date: 2021/7/17
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+public class CancelPacket extends RpcPacket implements Serializable {
+
+}
@@ -0,0 +1,29 @@
+package com.tiger.rpc.netty.packet;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+import java.io.Serializable;
+
+/**
+ * @ClassName: HandshakePacket.java
+ *
+ * @Description: 连接握手包
+ *              1.consumer连接建立后发送空握手包
+ *              2.provider回写方法字典：第i个元素为方法编号组合(服务编号高32位 + 方法编号低32位)，方法索引为i + 1
+ *              3.之后的请求只携带方法索引
+ *
+ * @Author: Tiger
+ *
+ * @Date: 2021/6/20
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+public class HandshakePacket extends RpcPacket implements Serializable {
+
+    /**
+     * 方法字典
+     */
+    private long[] methodKeys;
+
+}
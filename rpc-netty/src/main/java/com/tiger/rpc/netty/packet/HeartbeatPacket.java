@@ -0,0 +1,29 @@
+package com.tiger.rpc.netty.packet;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+import java.io.Serializable;
+
+/**
+ * @ClassName: HeartbeatPacket.java
+ *
+ * @Description: 心跳包
+ *              1.consumer写空闲时发送ping
+ *              2.provider收到ping后回写pong
+ *              3.双方收到任意数据即认为连接存活，空闲超时的连接被关闭
+ *
+ * @Author: Tiger
+ *
+ * @Date: 2021/6/26
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+public class HeartbeatPacket extends RpcPacket implements Serializable {
+
+    /**
+     * 是否为pong
+     */
+    private boolean pong;
+
+}
@@ -1,5 +1,6 @@
 package com.tiger.rpc.netty.packet;
 
+import com.tiger.rpc.netty.code.RpcHeader;
 import lombok.Data;
 
 import java.io.Serializable;
@@ -17,17 +18,32 @@ import java.io.Serializable;
 public class RequestPacket extends RpcPacket implements Serializable {
 
     /**
-     * 接口名
+     * 方法索引，握手后由provider下发的方法字典分配，为0时使用服务编号/方法编号
+     */
+    private int methodIndex;
+
+    /**
+     * 服务编号，见{@link com.tiger.rpc.netty.invoker.InvokerIds}，为0时按类名/方法名/参数类型查找
+     */
+    private int serviceId;
+
+    /**
+     * 方法编号
+     */
+    private int methodId;
+
+    /**
+     * 接口名，携带服务编号时为空
      */
     private String className;
 
     /**
-     * 方法名
+     * 方法名，携带服务编号时为空
      */
     private String methodName;
 
     /**
-     * 方法参数类型
+     * 方法参数类型，携带服务编号时为空
      */
     private Class[] paramType;
 
@@ -36,4 +52,34 @@ public class RequestPacket extends RpcPacket implements Serializable {
      */
     private Object[] args;
 
+    /**
+     * consumer剩余等待时间(毫秒)，为0时不限制；使用相对时间，不受两端时钟偏差影响
+     */
+    private int timeout;
+
+    /**
+     * provider本地截止时间(毫秒)：收到请求时间 + 剩余等待时间，为0时不限制，不参与序列化
+     */
+    private transient long deadline;
+
+    /**
+     * 是否单向请求，由帧头标记位携带
+     * @return
+     */
+    public boolean isOneWay() {
+        return (getFlags() & RpcHeader.FLAG_ONE_WAY) != 0;
+    }
+
+    public void setOneWay(boolean oneWay) {
+        setFlags((byte) (oneWay ? getFlags() | RpcHeader.FLAG_ONE_WAY : getFlags() & ~RpcHeader.FLAG_ONE_WAY));
+    }
+
+    /**
+     * 是否已超过截止时间：consumer已放弃等待
+     * @return
+     */
+    public boolean isExpired() {
+        return deadline > 0 && System.currentTimeMillis() >= deadline;
+    }
+
 }
@@ -16,14 +16,33 @@ import lombok.Data;
 public class RpcPacket {
 
     /**
-     * 请求编号
+     * 请求编号，连接内递增，写入帧头，不参与序列化
      */
-    private String requestId;
+    private transient long requestId;
 
     /**
      * rpc协议类型
      */
     private ProtocolTypeEnum protocolType;
 
+    /**
+     * 序列化编号，写入帧头，不参与序列化
+     */
+    private transient byte serializerId;
+
+    /**
+     * 帧头标记位，不参与序列化
+     */
+    private transient byte flags;
+
+    /**
+     * 压缩编号，为0时不压缩；编码时按阈值决定是否压缩，写入帧头标记位，不参与序列化
+     */
+    private transient byte compressorId;
+
+    /**
+     * 压缩阈值(字节)，序列化后不小于该值时压缩，不参与序列化
+     */
+    private transient int compressThreshold;
 
 }
@@ -0,0 +1,32 @@
+package com.tiger.rpc.netty.packet;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+import java.io.Serializable;
+
+/**
+ * @ClassName: StreamCreditPacket.java
+ *
+ * @Description: 流式响应额度包：consumer授予provider可回写的块数，或取消流
+ *              帧头请求编号为原请求编号
+ *
+ * @Author: Tiger
+ *
+ * @Date: 2021/7/4
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+public class StreamCreditPacket extends RpcPacket implements Serializable {
+
+    /**
+     * 新增额度(块数)
+     */
+    private int credits;
+
+    /**
+     * 是否取消：consumer不再读取，provider停止迭代
+     */
+    private boolean cancel;
+
+}
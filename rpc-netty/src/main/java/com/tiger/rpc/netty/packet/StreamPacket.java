@@ -0,0 +1,39 @@
+package com.tiger.rpc.netty.packet;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+import java.io.Serializable;
+
+/**
+ * @ClassName: StreamPacket.java
+ *
+ * @Description: 流式响应数据包：返回{@link java.util.Iterator}的方法，provider边迭代边分块回写
+ *              1.帧头请求编号为原请求编号
+ *              2.每块携带若干元素，最后一块标记结束，迭代异常时携带异常并结束
+ *              3.provider只在consumer授予额度({@link StreamCreditPacket})时回写，每块消耗一个额度
+ *
+ * @Author: Tiger
+ *
+ * @Date: 2021/7/4
+ */
+@Data
+@EqualsAndHashCode(callSuper = true)
+public class StreamPacket extends RpcPacket implements Serializable {
+
+    /**
+     * 本块元素
+     */
+    private Object[] elements;
+
+    /**
+     * 是否结束
+     */
+    private boolean end;
+
+    /**
+     * 迭代异常，不为空时流结束
+     */
+    private Throwable throwable;
+
+}
@@ -1,17 +1,26 @@
 package com.tiger.rpc.netty.provider;
 
 import com.tiger.rpc.common.config.ServiceConfig;
-import com.tiger.rpc.common.enums.ProtocolTypeEnum;
 import com.tiger.rpc.netty.packet.ResponsePacket;
 import com.tiger.rpc.netty.code.RpcDecoder;
 import com.tiger.rpc.netty.code.RpcEncoder;
+import com.tiger.rpc.netty.enums.DispatchModeEnum;
+import com.tiger.rpc.netty.enums.TransportTypeEnum;
+import com.tiger.rpc.netty.packet.BatchRequestPacket;
+import com.tiger.rpc.netty.packet.BatchResponsePacket;
+import com.tiger.rpc.netty.packet.CancelPacket;
 import com.tiger.rpc.netty.packet.RequestPacket;
+import com.tiger.rpc.netty.packet.StreamCreditPacket;
+import com.tiger.rpc.netty.packet.StreamPacket;
 import com.tiger.rpc.netty.provider.handler.NettyServerHandler;
+import com.tiger.rpc.netty.utils.ProtoStuffUtil;
+import com.tiger.rpc.netty.utils.TransportUtils;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.epoll.EpollChannelOption;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import io.netty.handler.timeout.IdleStateHandler;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
@@ -39,28 +48,77 @@ public final class NettyServer {
 
     private EventLoopGroup workerGroup;
 
-    private ChannelFuture server;
+    /**
+     * 监听channel，开启SO_REUSEPORT时同一端口绑定多个
+     */
+    private List<ChannelFuture> servers = new ArrayList<>();
 
     private NettyServerHandler serverHandler;
 
+    /**
+     * 请求分发器
+     */
+    private ServiceDispatcher dispatcher;
+
+    /**
+     * 合并flush的最大次数，达到后立即刷出
+     */
+    public static final int FLUSH_CONSOLIDATION_LIMIT = 256;
+
+    /**
+     * 默认连接空闲超时(秒)：consumer心跳间隔的4倍
+     */
+    public static final int DEFAULT_IDLE_TIMEOUT_SECONDS = 60;
+
     NettyServer(String name, Map<String, ServiceConfig> beans, int port, int selectorThreads, int workerThreads) {
+        this(name, beans, port, selectorThreads, workerThreads, TransportTypeEnum.AUTO, false,
+                new ServiceDispatcher(DispatchModeEnum.SHARED, ServiceDispatcher.DEFAULT_THREADS, ServiceDispatcher.DEFAULT_QUEUE_SIZE),
+                DEFAULT_IDLE_TIMEOUT_SECONDS, TransportUtils.DEFAULT_WRITE_BUFFER_WATER_MARK);
+    }
+
+    /**
+     * @param transportType 传输类型，epoll不可用时回退nio
+     * @param reusePort 是否开启SO_REUSEPORT，仅epoll生效：每个selector线程单独绑定一次端口，由内核分发连接
+     * @param dispatcher    请求分发器，服务方法在分发器线程上执行
+     * @param idleTimeoutSeconds    连接空闲超时(秒)，超过该时间未收到数据(请求或心跳)时关闭连接，0为不检测
+     * @param writeBufferWaterMark  出站缓冲水位，超过高水位时暂停读取该连接的请求
+     */
+    NettyServer(String name, Map<String, ServiceConfig> beans, int port, int selectorThreads, int workerThreads,
+                TransportTypeEnum transportType, boolean reusePort, ServiceDispatcher dispatcher, int idleTimeoutSeconds,
+                WriteBufferWaterMark writeBufferWaterMark) {
         //设置线程名称
         this.name = name;
 
+        boolean epoll = TransportUtils.useEpoll(transportType);
         //设置selector线程数
-        bossGroup = new NioEventLoopGroup(selectorThreads);
+        bossGroup = TransportUtils.newEventLoopGroup(epoll, selectorThreads, null);
         //设置worker线程数
-        workerGroup = new NioEventLoopGroup(workerThreads);
+        workerGroup = TransportUtils.newEventLoopGroup(epoll, workerThreads, null);
+        //预热数据包及服务参数/返回值的schema
+        ProtoStuffUtil.warmUp(RequestPacket.class, ResponsePacket.class, BatchRequestPacket.class, BatchResponsePacket.class,
+                StreamPacket.class, StreamCreditPacket.class, CancelPacket.class);
+        for (ServiceConfig config : beans.values()) {
+            ProtoStuffUtil.warmUpInterface(config.getInterfaceClass());
+        }
+        //请求分发器，按服务创建线程池
+        this.dispatcher = dispatcher;
+        dispatcher.addServices(beans.values());
         //服务端处理器，处理服务具体方法
-        serverHandler = new NettyServerHandler(beans);
-        ServerBootstrap bootstrap = new ServerBootstrap().group(bossGroup, workerGroup).channel(NioServerSocketChannel.class)
+        serverHandler = new NettyServerHandler(beans, dispatcher);
+        ServerBootstrap bootstrap = new ServerBootstrap().group(bossGroup, workerGroup).channel(TransportUtils.serverChannelClass(epoll))
                 .childHandler(new ChannelInitializer<SocketChannel>() {
                     @Override
                     public void initChannel(SocketChannel channel) throws Exception {
+                        if (idleTimeoutSeconds > 0) {
+                            //读空闲检测，关闭半开连接
+                            channel.pipeline().addLast(new IdleStateHandler(idleTimeoutSeconds, 0, 0));
+                        }
                         //解码/编码与客户端顺序相反，最后设置服务端处理器
                         channel.pipeline()
+                                //合并flush：同一次读取或业务线程并发回写的多个响应一次刷出，减少write系统调用
+                                .addLast(new FlushConsolidationHandler(FLUSH_CONSOLIDATION_LIMIT, true))
                                 //解码请求数据包
-                                .addLast(new RpcDecoder<RequestPacket>(RequestPacket.class, ProtocolTypeEnum.NETTY))
+                                .addLast(new RpcDecoder<RequestPacket>(RequestPacket.class))
                                 //编码响应数据包
                                 .addLast(new RpcEncoder<ResponsePacket>(ResponsePacket.class))
                                 //服务处理器
@@ -69,9 +127,24 @@ public final class NettyServer {
                 })
                 //绑定so_backlog(最大连接数1024)、keep-alive(探测客户端的连接是否还存活着)、tcp_nodelay(tcp非延迟发送)
                 .option(ChannelOption.SO_BACKLOG, 1024).childOption(ChannelOption.SO_KEEPALIVE, true)
-                .childOption(ChannelOption.TCP_NODELAY, true);
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK,
+                        writeBufferWaterMark == null ? TransportUtils.DEFAULT_WRITE_BUFFER_WATER_MARK : writeBufferWaterMark);
+        int bindTimes = 1;
+        if (reusePort) {
+            if (epoll) {
+                bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+                //每次绑定轮询分配到一个selector线程，多个selector线程同时accept
+                bindTimes = selectorThreads > 0 ? selectorThreads : 1;
+            } else {
+                log.warn("SO_REUSEPORT requires epoll transport, ignored");
+            }
+        }
         //绑定端口
-        server = bootstrap.bind(port);
+        for (int i = 0; i < bindTimes; i++) {
+            servers.add(bootstrap.bind(port));
+        }
+        log.debug("NettyServer[{}] transport: {}, bind times: {}", name, epoll ? "epoll" : "nio", bindTimes);
     }
 
     /**
@@ -80,12 +153,14 @@ public final class NettyServer {
      */
     public void addServices(List<ServiceConfig> services){
         if(this.serverHandler != null){
-            Class<?> enClosedClazz;
             for (ServiceConfig config : services) {
-                enClosedClazz = config.getInterfaceClass().getEnclosingClass();
-                enClosedClazz = enClosedClazz == null? config.getInterfaceClass() : enClosedClazz;
-                this.serverHandler.getProcessor().put(enClosedClazz.getName(), config.getRef());
+                //生成方法调用器
+                this.serverHandler.getRegistry().register(config.getInterfaceClass(), config.getRef());
+                //预热服务参数/返回值的schema
+                ProtoStuffUtil.warmUpInterface(config.getInterfaceClass());
             }
+            //按服务创建线程池
+            this.dispatcher.addServices(services);
         }
     }
 
@@ -94,8 +169,8 @@ public final class NettyServer {
      */
     public void start() {
         log.debug("Start to start server thread");
-        if (server != null) {
-            while (server != null && !server.channel().isActive()) {
+        for (ChannelFuture server : servers) {
+            while (!server.channel().isActive()) {
                 try {
                     //启动rpc服务
                     server.sync();
@@ -112,7 +187,10 @@ public final class NettyServer {
      * @return
      */
     public boolean isServing(){
-        boolean servingFlag = server != null && server.channel() != null ? server.channel().isActive() : false;
+        boolean servingFlag = !servers.isEmpty();
+        for (ChannelFuture server : servers) {
+            servingFlag = servingFlag && server.channel() != null && server.channel().isActive();
+        }
         if(servingFlag){
             log.debug("Netty server is serving");
         } else {
@@ -126,10 +204,10 @@ public final class NettyServer {
      */
     public void stopServer() {
         log.debug("Start to stop server thread");
-        if (server != null) {
-            server.channel().closeFuture();
-            server = null;
+        for (ChannelFuture server : servers) {
+            server.channel().close();
         }
+        servers.clear();
         if (bossGroup != null) {
             bossGroup.shutdownGracefully();
             bossGroup = null;
@@ -138,6 +216,10 @@ public final class NettyServer {
             workerGroup.shutdownGracefully();
             workerGroup = null;
         }
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+            dispatcher = null;
+        }
         log.debug("Server thread stopped successfully");
     }
 }
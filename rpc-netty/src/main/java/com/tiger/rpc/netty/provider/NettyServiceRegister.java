@@ -5,6 +5,10 @@ import com.tiger.rpc.common.config.ServiceConfig;
 import com.tiger.rpc.common.enums.ProtocolTypeEnum;
 import com.tiger.rpc.common.register.ApplicationRegister;
 import com.tiger.rpc.common.register.ServiceRegister;
+import com.tiger.rpc.netty.enums.DispatchModeEnum;
+import com.tiger.rpc.netty.enums.TransportTypeEnum;
+import com.tiger.rpc.netty.utils.TransportUtils;
+import io.netty.channel.WriteBufferWaterMark;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
@@ -43,8 +47,49 @@ public class NettyServiceRegister extends ServiceRegister {
 	 */
 	private int workerThreads;
 
+	/**
+	 * 传输类型，默认自动选择：epoll可用时使用epoll，否则使用nio
+	 */
+	private TransportTypeEnum transportType = TransportTypeEnum.AUTO;
+
+	/**
+	 * 是否开启SO_REUSEPORT，仅epoll生效，多个selector线程同时accept同一端口
+	 */
+	private boolean reusePort = false;
+
+	/**
+	 * 请求分发方式，默认共享业务线程池，服务方法不在io线程上执行
+	 */
+	private DispatchModeEnum dispatchMode = DispatchModeEnum.SHARED;
+
+	/**
+	 * 共享业务线程数，虚拟线程方式时为最大并发数
+	 */
+	private int businessThreads = ServiceDispatcher.DEFAULT_THREADS;
+
+	/**
+	 * 共享业务线程池队列大小，队列满时拒绝请求并回写服务繁忙错误
+	 */
+	private int businessQueueSize = ServiceDispatcher.DEFAULT_QUEUE_SIZE;
+
+	/**
+	 * 连接空闲超时(秒)，超过该时间未收到数据(请求或心跳)时关闭连接，0为不检测
+	 */
+	private int idleTimeoutSeconds = NettyServer.DEFAULT_IDLE_TIMEOUT_SECONDS;
+
+	/**
+	 * 出站缓冲低水位(字节)
+	 */
+	private int writeBufferLowWaterMark = TransportUtils.DEFAULT_WRITE_BUFFER_WATER_MARK.low();
+
+	/**
+	 * 出站缓冲高水位(字节)，超过时暂停读取该连接的请求
+	 */
+	private int writeBufferHighWaterMark = TransportUtils.DEFAULT_WRITE_BUFFER_WATER_MARK.high();
+
 	public NettyServiceRegister(ApplicationRegister appRegister, List<ServiceConfig> serviceList, int selectorThreads, int workerThreads, int serverPort) {
 		super(appRegister, serviceList, serverPort);
+		this.selectorThreads = selectorThreads;
 		this.workerThreads = workerThreads;
 	}
 
@@ -67,7 +112,9 @@ public class NettyServiceRegister extends ServiceRegister {
 		if(nettyServer == null){
 			//线程不存在时，直接创建线程
 			nettyServer = new NettyServer(this.getClass().getSimpleName() + "_NettyServer",
-					super.getServiceBeanMap(), super.getServerPort(), selectorThreads, workerThreads);
+					super.getServiceBeanMap(), super.getServerPort(), selectorThreads, workerThreads, transportType, reusePort,
+					new ServiceDispatcher(dispatchMode, businessThreads, businessQueueSize), idleTimeoutSeconds,
+					new WriteBufferWaterMark(writeBufferLowWaterMark, writeBufferHighWaterMark));
 			log.debug("NettyServer[{}] created. ", nettyServer.getName());
 		} else if (!nettyServer.isServing()){
 			//不在服务时，直接启动服务
@@ -114,6 +161,15 @@ public class NettyServiceRegister extends ServiceRegister {
 		}
 	}
 
+	public int getSelectorThreads() {
+		return selectorThreads;
+	}
+
+	public NettyServiceRegister setSelectorThreads(int selectorThreads) {
+		this.selectorThreads = selectorThreads;
+		return this;
+	}
+
 	public int getWorkerThreads() {
 		return workerThreads;
 	}
@@ -123,6 +179,103 @@ public class NettyServiceRegister extends ServiceRegister {
 		return this;
 	}
 
+	public TransportTypeEnum getTransportType() {
+		return transportType;
+	}
+
+	/**
+	 * 设置传输类型，服务启动前设置生效
+	 * @param transportType
+	 * @return
+	 */
+	public NettyServiceRegister setTransportType(TransportTypeEnum transportType) {
+		this.transportType = transportType == null ? TransportTypeEnum.AUTO : transportType;
+		return this;
+	}
+
+	public boolean isReusePort() {
+		return reusePort;
+	}
+
+	/**
+	 * 设置SO_REUSEPORT，服务启动前设置生效
+	 * @param reusePort
+	 * @return
+	 */
+	public NettyServiceRegister setReusePort(boolean reusePort) {
+		this.reusePort = reusePort;
+		return this;
+	}
+
+	public DispatchModeEnum getDispatchMode() {
+		return dispatchMode;
+	}
+
+	/**
+	 * 设置请求分发方式，服务启动前设置生效
+	 * @param dispatchMode
+	 * @return
+	 */
+	public NettyServiceRegister setDispatchMode(DispatchModeEnum dispatchMode) {
+		this.dispatchMode = dispatchMode == null ? DispatchModeEnum.SHARED : dispatchMode;
+		return this;
+	}
+
+	public int getBusinessThreads() {
+		return businessThreads;
+	}
+
+	public NettyServiceRegister setBusinessThreads(int businessThreads) {
+		this.businessThreads = businessThreads;
+		return this;
+	}
+
+	public int getBusinessQueueSize() {
+		return businessQueueSize;
+	}
+
+	public NettyServiceRegister setBusinessQueueSize(int businessQueueSize) {
+		this.businessQueueSize = businessQueueSize;
+		return this;
+	}
+
+	public int getIdleTimeoutSeconds() {
+		return idleTimeoutSeconds;
+	}
+
+	/**
+	 * 设置连接空闲超时(秒)，服务启动前设置生效；应大于consumer心跳间隔
+	 * @param idleTimeoutSeconds	0为不检测
+	 * @return
+	 */
+	public NettyServiceRegister setIdleTimeoutSeconds(int idleTimeoutSeconds) {
+		this.idleTimeoutSeconds = idleTimeoutSeconds < 0 ? 0 : idleTimeoutSeconds;
+		return this;
+	}
+
+	public int getWriteBufferLowWaterMark() {
+		return writeBufferLowWaterMark;
+	}
+
+	public int getWriteBufferHighWaterMark() {
+		return writeBufferHighWaterMark;
+	}
+
+	/**
+	 * 设置出站缓冲水位，服务启动前设置生效
+	 * @param low	低水位(字节)
+	 * @param high	高水位(字节)
+	 * @return
+	 */
+	public NettyServiceRegister setWriteBufferWaterMark(int low, int high) {
+		if (low < 0 || high < low) {
+			throw new IllegalArgumentException(String.format("Illegal write buffer water mark[low=%d, high=%d]", low, high));
+		}
+		this.writeBufferLowWaterMark = low;
+		this.writeBufferHighWaterMark = high;
+		return this;
+	}
+
 	/**
 	 * 覆盖方法，强转对象，以便fluent方式构建对象
 	 * @param appRegister
@@ -0,0 +1,138 @@
+package com.tiger.rpc.netty.provider;
+
+import com.tiger.rpc.netty.packet.RequestPacket;
+import io.netty.util.Timeout;
+import io.netty.util.concurrent.EventExecutor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @ClassName: RequestExecution.java
+ *
+ * @Description: provider端带截止时间的请求执行，收到请求时创建，每个请求一个实例
+ *              1.开始执行时已超过截止时间 or 已被consumer取消：跳过执行
+ *              2.执行超过截止时间 or 执行中被consumer取消：中断执行线程(io线程上执行时不中断)
+ *              3.执行结束后已超时 or 已取消：不回写响应
+ *              4.截止时间任务放在进程共享的时间轮上，添加/取消只入队，不向io线程提交任务
+ *
+ * @Author: Tiger
+ *
+ * @Date: 2021/7/17
+ */
+@Slf4j
+public class RequestExecution {
+
+    private static final int QUEUED = 0;
+
+    private static final int RUNNING = 1;
+
+    private static final int DONE = 2;
+
+    private static final int CANCELLED = 3;
+
+    /**
+     * 请求包
+     */
+    private final RequestPacket request;
+
+    /**
+     * 所属channel的执行：请求编号 <---> 执行，结束时移除
+     */
+    private final Map<Long, RequestExecution> executions;
+
+    /**
+     * 执行状态，在本对象锁内读写
+     */
+    private int state = QUEUED;
+
+    /**
+     * 执行线程
+     */
+    private Thread thread;
+
+    /**
+     * 是否由本对象中断了执行线程
+     */
+    private boolean interrupted;
+
+    /**
+     * 截止时间任务
+     */
+    private Timeout deadlineTask;
+
+    public RequestExecution(RequestPacket request, Map<Long, RequestExecution> executions) {
+        this.request = request;
+        this.executions = executions;
+    }
+
+    /**
+     * 开始执行(业务线程)
+     * @param executor  channel的io线程，io线程上执行时不中断
+     * @return  是否执行：已超时 or 已取消时返回false
+     */
+    public synchronized boolean begin(EventExecutor executor) {
+        if (state != QUEUED || request.isExpired()) {
+            state = CANCELLED;
+            executions.remove(request.getRequestId(), this);
+            return false;
+        }
+        state = RUNNING;
+        if (!executor.inEventLoop()) {
+            //io线程上执行(INLINE)时无法在执行期间触发任务，也不能中断io线程
+            thread = Thread.currentThread();
+            deadlineTask = ServerTimer.TIMER.newTimeout(timeout -> expire(), request.getDeadline() - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+        return true;
+    }
+
+    /**
+     * 结束执行(业务线程)，清除本对象设置的中断标记，避免影响线程池中的下一个任务
+     * @return  是否回写响应：执行期间未被取消且未超时
+     */
+    public synchronized boolean end() {
+        executions.remove(request.getRequestId(), this);
+        if (deadlineTask != null) {
+            deadlineTask.cancel();
+        }
+        boolean completed = state == RUNNING && !request.isExpired();
+        state = DONE;
+        thread = null;
+        if (interrupted) {
+            Thread.interrupted();
+        }
+        return completed;
+    }
+
+    /**
+     * consumer取消 or 连接断开：未执行时跳过，执行中时中断
+     */
+    public synchronized void cancel() {
+        executions.remove(request.getRequestId(), this);
+        if (state == QUEUED) {
+            state = CANCELLED;
+        } else if (state == RUNNING) {
+            state = CANCELLED;
+            interrupt();
+        }
+    }
+
+    /**
+     * 执行超过截止时间
+     */
+    private synchronized void expire() {
+        if (state == RUNNING) {
+            log.warn("Request[{}] exceeds its deadline[{}ms], interrupt it", request.getRequestId(), request.getTimeout());
+            state = CANCELLED;
+            interrupt();
+        }
+    }
+
+    private void interrupt() {
+        if (thread != null) {
+            interrupted = true;
+            thread.interrupt();
+        }
+    }
+}
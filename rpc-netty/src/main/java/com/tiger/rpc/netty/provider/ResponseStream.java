@@ -0,0 +1,301 @@
+package com.tiger.rpc.netty.provider;
+
+import com.tiger.rpc.common.enums.ServiceCodeEnum;
+import com.tiger.rpc.common.exception.ServiceException;
+import com.tiger.rpc.netty.code.RpcEncoder;
+import com.tiger.rpc.netty.packet.StreamPacket;
+import io.netty.channel.Channel;
+import io.netty.util.Timeout;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @ClassName: ResponseStream.java
+ *
+ * @Description: provider端流式响应，每个流式调用一个实例
+ *              1.consumer授予额度后，在业务线程上迭代结果，每块最多{@link #CHUNK_SIZE}个元素，每块消耗一个额度
+ *              2.额度用完时暂停迭代，新的额度到达后继续，consumer读取慢时不在内存中堆积
+ *              3.迭代结束、异常、取消或连接断开时结束，结果实现AutoCloseable时关闭
+ *              4.额度用完后超过空闲时间未收到新额度时回写超时异常并结束，consumer异常未取消时不一直占用迭代器
+ *
+ * @Author: Tiger
+ *
+ * @Date: 2021/7/4
+ */
+@Slf4j
+public class ResponseStream {
+
+    /**
+     * 每块最大元素数
+     */
+    public static final int CHUNK_SIZE = 128;
+
+    /**
+     * 默认空闲超时(毫秒)
+     */
+    public static final int DEFAULT_IDLE_TIMEOUT = 60000;
+
+    /**
+     * 请求编号
+     */
+    @Getter
+    private final long requestId;
+
+    /**
+     * 所属channel
+     */
+    private final Channel channel;
+
+    /**
+     * 所属channel的流式响应：请求编号 <---> 流，结束时移除
+     */
+    private final Map<Long, ResponseStream> streams;
+
+    /**
+     * 请求分发器，迭代在业务线程上执行
+     */
+    private final ServiceDispatcher dispatcher;
+
+    /**
+     * 所属服务名
+     */
+    private final String serviceName;
+
+    /**
+     * 空闲超时(毫秒)，0为不检测
+     */
+    private final int idleTimeout;
+
+    /**
+     * 剩余额度(块数)
+     */
+    private final AtomicInteger credits = new AtomicInteger();
+
+    /**
+     * 是否正在迭代，保证同一时刻只有一个线程迭代
+     */
+    private final AtomicBoolean pumping = new AtomicBoolean();
+
+    /**
+     * 方法返回的迭代器，方法执行完成前为null
+     */
+    private volatile Iterator<?> iterator;
+
+    /**
+     * 数据包模板：协议类型、序列化方式
+     */
+    private volatile StreamPacket template;
+
+    /**
+     * 是否已结束
+     */
+    private volatile boolean closed;
+
+    /**
+     * 最近一次收到额度的时间
+     */
+    private volatile long lastCredit;
+
+    /**
+     * 空闲检测任务
+     */
+    private volatile Timeout idleTask;
+
+    public ResponseStream(long requestId, Channel channel, Map<Long, ResponseStream> streams, ServiceDispatcher dispatcher, String serviceName) {
+        this(requestId, channel, streams, dispatcher, serviceName, DEFAULT_IDLE_TIMEOUT);
+    }
+
+    /**
+     * @param idleTimeout   空闲超时(毫秒)，额度用完后超过该时间未收到新额度时结束，0为不检测
+     */
+    public ResponseStream(long requestId, Channel channel, Map<Long, ResponseStream> streams, ServiceDispatcher dispatcher, String serviceName,
+                          int idleTimeout) {
+        this.requestId = requestId;
+        this.channel = channel;
+        this.streams = streams;
+        this.dispatcher = dispatcher;
+        this.serviceName = serviceName;
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * 方法执行完成，开始迭代(已有额度时)
+     * @param iterator  方法返回的迭代器，为null时作为空结果
+     * @param template  数据包模板
+     */
+    public void start(Iterator<?> iterator, StreamPacket template) {
+        this.template = template;
+        this.iterator = iterator;
+        if (closed) {
+            //执行期间consumer已取消 or 连接已断开
+            release();
+            return;
+        }
+        lastCredit = System.currentTimeMillis();
+        if (idleTimeout > 0) {
+            idleTask = ServerTimer.TIMER.newTimeout(this::checkIdle, idleTimeout, TimeUnit.MILLISECONDS);
+        }
+        pump();
+    }
+
+    /**
+     * 增加额度，暂停中时继续迭代
+     * @param added
+     */
+    public void grant(int added) {
+        if (added > 0) {
+            lastCredit = System.currentTimeMillis();
+            credits.addAndGet(added);
+            schedule();
+        }
+    }
+
+    /**
+     * 结束流，关闭迭代器
+     */
+    public void cancel() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (!pumping.get()) {
+            release();
+        }
+    }
+
+    /**
+     * 空闲检测(时间轮线程)：额度用完且超过空闲时间未收到新额度时结束，否则按剩余时间再次检测
+     * @param timeout
+     */
+    private void checkIdle(Timeout timeout) {
+        if (closed) {
+            return;
+        }
+        long idle = System.currentTimeMillis() - lastCredit;
+        if (credits.get() > 0 || pumping.get() || idle < idleTimeout) {
+            //有额度时迭代本身慢不算空闲
+            long delay = credits.get() > 0 || pumping.get() ? idleTimeout : idleTimeout - idle;
+            idleTask = ServerTimer.TIMER.newTimeout(this::checkIdle, delay, TimeUnit.MILLISECONDS);
+            return;
+        }
+        log.warn("Stream[{}] of service[{}] received no credit for {}ms, close it", requestId, serviceName, idle);
+        finish(new ServiceException(ServiceCodeEnum.SERVICE_TIMEOUT.getCode(), String.format(ServiceCodeEnum.SERVICE_TIMEOUT.getValue(), idleTimeout)));
+    }
+
+    /**
+     * 分发到业务线程迭代
+     */
+    private void schedule() {
+        if (iterator == null || closed || pumping.get()) {
+            return;
+        }
+        try {
+            dispatcher.dispatch(serviceName, this::pump);
+        } catch (RejectedExecutionException e) {
+            log.warn("Stream[{}] of service[{}] rejected", requestId, serviceName);
+            finish(e);
+        }
+    }
+
+    /**
+     * 按额度迭代并回写，额度用完时暂停
+     */
+    private void pump() {
+        while (iterator != null && !closed && credits.get() > 0 && pumping.compareAndSet(false, true)) {
+            try {
+                while (!closed && credits.get() > 0) {
+                    StreamPacket packet = nextChunk();
+                    credits.decrementAndGet();
+                    if (packet.isEnd()) {
+                        closed = true;
+                        channel.writeAndFlush(RpcEncoder.precompress(channel, packet));
+                        break;
+                    }
+                    channel.writeAndFlush(RpcEncoder.precompress(channel, packet));
+                }
+            } catch (Exception e) {
+                log.error(String.format("Stream[%s] iterate failed", requestId), e);
+                finish(e);
+            } finally {
+                pumping.set(false);
+            }
+            if (closed) {
+                release();
+                return;
+            }
+        }
+    }
+
+    /**
+     * 读取下一块，迭代完成时标记结束
+     * @return
+     */
+    private StreamPacket nextChunk() {
+        Iterator<?> current = iterator;
+        Object[] buffer = new Object[CHUNK_SIZE];
+        int size = 0;
+        while (size < CHUNK_SIZE && current != null && current.hasNext()) {
+            buffer[size++] = current.next();
+        }
+        StreamPacket packet = newPacket();
+        Object[] elements = new Object[size];
+        System.arraycopy(buffer, 0, elements, 0, size);
+        packet.setElements(elements);
+        packet.setEnd(current == null || !current.hasNext());
+        return packet;
+    }
+
+    /**
+     * 异常结束：回写异常并关闭
+     * @param e
+     */
+    private void finish(Exception e) {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        StreamPacket packet = newPacket();
+        packet.setEnd(true);
+        packet.setThrowable(e);
+        channel.writeAndFlush(packet);
+        if (!pumping.get()) {
+            release();
+        }
+    }
+
+    private StreamPacket newPacket() {
+        StreamPacket packet = new StreamPacket();
+        packet.setRequestId(requestId);
+        packet.setProtocolType(template.getProtocolType());
+        packet.setSerializerId(template.getSerializerId());
+        packet.setCompressorId(template.getCompressorId());
+        packet.setCompressThreshold(template.getCompressThreshold());
+        return packet;
+    }
+
+    /**
+     * 从所属channel移除，结果实现AutoCloseable时关闭(如数据库游标)
+     */
+    private void release() {
+        streams.remove(requestId, this);
+        Timeout task = idleTask;
+        if (task != null) {
+            task.cancel();
+        }
+        Iterator<?> current = iterator;
+        if (current instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) current).close();
+            } catch (Exception e) {
+                log.warn("Close stream[{}] failed", requestId, e);
+            }
+        }
+    }
+}
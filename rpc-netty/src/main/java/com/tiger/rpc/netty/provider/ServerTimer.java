@@ -0,0 +1,26 @@
+package com.tiger.rpc.netty.provider;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @ClassName: ServerTimer.java
+ *
+ * @Description: provider端共享时间轮，精度10ms，使用时创建
+ *              1.请求截止时间、流式响应空闲检测共用，添加/取消只入队，不向io线程提交任务
+ *              2.任务在时间轮线程上执行，不能阻塞
+ *
+ * @Author: Tiger
+ *
+ * @Date: 2021/7/17
+ */
+final class ServerTimer {
+
+    static final Timer TIMER = new HashedWheelTimer(new DefaultThreadFactory("nettyServerTimer", true), 10, TimeUnit.MILLISECONDS, 512);
+
+    private ServerTimer() {
+    }
+}
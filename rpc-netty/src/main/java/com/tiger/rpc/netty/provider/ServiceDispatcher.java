@@ -0,0 +1,183 @@
+package com.tiger.rpc.netty.provider;
+
+import com.tiger.rpc.common.config.ServiceConfig;
+import com.tiger.rpc.netty.enums.DispatchModeEnum;
+import com.tiger.rpc.netty.invoker.InvokerIds;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @ClassName: ServiceDispatcher.java
+ *
+ * @Description: 服务端请求分发，将服务方法执行与netty io线程解耦
+ *              1.队列满或并发数超限时抛出{@link RejectedExecutionException}，由调用方回写错误响应，不做无界排队
+ *              2.按服务分发时，线程池按服务名(接口外层类名)区分
+ *
+ * @Author: Tiger
+ *
+ * @Date: 2021/6/14
+ */
+@Slf4j
+public class ServiceDispatcher {
+
+    /**
+     * 默认业务线程数
+     */
+    public static final int DEFAULT_THREADS = 200;
+
+    /**
+     * 默认队列大小
+     */
+    public static final int DEFAULT_QUEUE_SIZE = 1024;
+
+    /**
+     * 分发方式
+     */
+    @Getter
+    private final DispatchModeEnum mode;
+
+    /**
+     * 共享线程池，INLINE时为null
+     */
+    private ExecutorService sharedExecutor;
+
+    /**
+     * 服务名 <---> 服务独立线程池
+     */
+    private final Map<String, ExecutorService> serviceExecutors = new ConcurrentHashMap<>();
+
+    /**
+     * 虚拟线程并发数限制
+     */
+    private Semaphore virtualPermits;
+
+    /**
+     * @param mode  分发方式，为空时使用共享线程池
+     * @param threads   共享线程数，虚拟线程方式时为最大并发数
+     * @param queueSize 共享线程池队列大小，为0时不排队
+     */
+    public ServiceDispatcher(DispatchModeEnum mode, int threads, int queueSize) {
+        mode = mode == null ? DispatchModeEnum.SHARED : mode;
+        threads = threads > 0 ? threads : DEFAULT_THREADS;
+        if (mode == DispatchModeEnum.VIRTUAL) {
+            ExecutorService virtualExecutor = newVirtualThreadExecutor();
+            if (virtualExecutor != null) {
+                this.sharedExecutor = virtualExecutor;
+                this.virtualPermits = new Semaphore(threads);
+            } else {
+                log.warn("Virtual threads unavailable in this jvm, fallback to shared executor");
+                mode = DispatchModeEnum.SHARED;
+            }
+        }
+        this.mode = mode;
+        if (mode != DispatchModeEnum.INLINE && sharedExecutor == null) {
+            this.sharedExecutor = newExecutor("nettyServerBiz", threads, queueSize);
+        }
+    }
+
+    /**
+     * 按服务分发时，为配置了独立线程数的服务创建线程池
+     * @param services
+     */
+    public void addServices(Collection<ServiceConfig> services) {
+        if (mode != DispatchModeEnum.PER_SERVICE) {
+            return;
+        }
+        for (ServiceConfig config : services) {
+            if (config.getExecutorThreads() <= 0) {
+                continue;
+            }
+            String serviceName = InvokerIds.serviceName(config.getInterfaceClass());
+            serviceExecutors.computeIfAbsent(serviceName, k -> newExecutor("nettyServerBiz-" + config.getInterfaceClass().getSimpleName(),
+                    config.getExecutorThreads(), config.getExecutorQueueSize()));
+        }
+    }
+
+    /**
+     * 分发请求
+     * @param serviceName   服务名(接口外层类名)
+     * @param task  请求处理
+     * @throws RejectedExecutionException   队列满或者并发数超限
+     */
+    public void dispatch(String serviceName, Runnable task) throws RejectedExecutionException {
+        switch (mode) {
+            case INLINE:
+                task.run();
+                break;
+            case PER_SERVICE:
+                ExecutorService executor = serviceName == null ? null : serviceExecutors.get(serviceName);
+                (executor == null ? sharedExecutor : executor).execute(task);
+                break;
+            case VIRTUAL:
+                if (!virtualPermits.tryAcquire()) {
+                    throw new RejectedExecutionException("Too many concurrent requests");
+                }
+                try {
+                    sharedExecutor.execute(() -> {
+                        try {
+                            task.run();
+                        } finally {
+                            virtualPermits.release();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    virtualPermits.release();
+                    throw e;
+                }
+                break;
+            default:
+                sharedExecutor.execute(task);
+                break;
+        }
+    }
+
+    /**
+     * 关闭线程池，已提交的请求继续执行
+     */
+    public void shutdown() {
+        if (sharedExecutor != null) {
+            sharedExecutor.shutdown();
+        }
+        serviceExecutors.values().forEach(ExecutorService::shutdown);
+        serviceExecutors.clear();
+    }
+
+    /**
+     * 创建有界线程池，拒绝策略为抛出异常
+     * @param name  线程名前缀
+     * @param threads   线程数
+     * @param queueSize 队列大小
+     * @return
+     */
+    private static ExecutorService newExecutor(String name, int threads, int queueSize) {
+        BlockingQueue<Runnable> queue = queueSize > 0 ? new ArrayBlockingQueue<>(queueSize) : new SynchronousQueue<>();
+        return new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, queue,
+                new DefaultThreadFactory(name), new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 反射创建虚拟线程执行器(jdk21+)
+     * @return 不可用时返回null
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
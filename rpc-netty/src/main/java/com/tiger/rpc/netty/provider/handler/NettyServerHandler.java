@@ -1,16 +1,42 @@
 package com.tiger.rpc.netty.provider.handler;
 
 import com.tiger.rpc.common.config.ServiceConfig;
+import com.tiger.rpc.common.enums.ServiceCodeEnum;
+import com.tiger.rpc.common.exception.ServiceException;
+import com.tiger.rpc.netty.code.RpcEncoder;
+import com.tiger.rpc.netty.compress.Compressor;
+import com.tiger.rpc.netty.compress.CompressorFactory;
+import com.tiger.rpc.netty.enums.DispatchModeEnum;
+import com.tiger.rpc.netty.invoker.InvokerIds;
+import com.tiger.rpc.netty.invoker.MethodInvoker;
+import com.tiger.rpc.netty.invoker.ServiceInvokerRegistry;
+import com.tiger.rpc.netty.packet.BatchRequestPacket;
+import com.tiger.rpc.netty.packet.BatchResponsePacket;
+import com.tiger.rpc.netty.packet.CancelPacket;
+import com.tiger.rpc.netty.packet.HandshakePacket;
+import com.tiger.rpc.netty.packet.HeartbeatPacket;
 import com.tiger.rpc.netty.packet.RequestPacket;
 import com.tiger.rpc.netty.packet.ResponsePacket;
+import com.tiger.rpc.netty.packet.RpcPacket;
+import com.tiger.rpc.netty.packet.StreamCreditPacket;
+import com.tiger.rpc.netty.packet.StreamPacket;
+import com.tiger.rpc.netty.provider.RequestExecution;
+import com.tiger.rpc.netty.provider.ResponseStream;
+import com.tiger.rpc.netty.provider.ServiceDispatcher;
 import io.netty.channel.*;
+import io.netty.handler.timeout.IdleState;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.StringUtils;
 
-import java.lang.reflect.Method;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
@@ -18,6 +44,14 @@ import java.util.Map;
  *
  * @Description: Netty服务端处理
  *              注解成Sharable共享NettyServerHandler，处理多客户端（或者客户端重启）io.netty.channel.StacklessClosedChannelException异常问题
+ *              请求通过分发器执行，不阻塞io线程；分发被拒绝时回写服务繁忙错误
+ *              服务方法在注册时生成调用器，请求按方法索引或服务编号/方法编号直接查找，不做反射查找
+ *              连接握手时回写方法字典；收到心跳回写pong，读空闲超时关闭连接
+ *              出站缓冲超过高水位时暂停读取
+ *              单向请求(帧头标记)执行后不回写响应；批量请求全部执行后回写一个批量响应
+ *              流式方法(返回Iterator)按consumer授予的额度分块回写
+ *              响应按服务配置的压缩方式和阈值压缩
+ *              请求携带consumer剩余等待时间时：超时未执行的跳过，执行超时 or 被consumer取消的中断并不回写响应
  *
  * @Author: Tiger
  *
@@ -28,15 +62,52 @@ import java.util.Map;
 public class NettyServerHandler extends ChannelInboundHandlerAdapter {
 
     /**
-     * 接口名和接口引用缓存，所有channel公用
+     * 服务方法调用器，所有channel公用
      */
     @Getter
-    private final Map<String, Object> processor = new HashMap<>();
+    private final ServiceInvokerRegistry registry = new ServiceInvokerRegistry();
+
+    /**
+     * 请求分发器
+     */
+    private final ServiceDispatcher dispatcher;
+
+    /**
+     * 服务配置：服务名 <---> 配置，用于响应压缩
+     */
+    private final Map<String, ServiceConfig> configs = new HashMap<>();
+
+    /**
+     * channel上的流式响应：请求编号 <---> 流
+     */
+    private static final AttributeKey<Map<Long, ResponseStream>> STREAMS = AttributeKey.valueOf("rpcResponseStreams");
+
+    /**
+     * channel上带截止时间的请求执行：请求编号 <---> 执行
+     */
+    private static final AttributeKey<Map<Long, RequestExecution>> EXECUTIONS = AttributeKey.valueOf("rpcRequestExecutions");
+
+    /**
+     * 响应写入结果监听，所有响应共用，只记录失败
+     */
+    private static final ChannelFutureListener WRITE_LISTENER = future -> {
+        if (!future.isSuccess()) {
+            log.warn("Write response to {} failed", future.channel().remoteAddress(), future.cause());
+        }
+    };
 
     public NettyServerHandler(Map<String, ServiceConfig> beans) {
+        this(beans, new ServiceDispatcher(DispatchModeEnum.INLINE, 0, 0));
+    }
+
+    public NettyServerHandler(Map<String, ServiceConfig> beans, ServiceDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
         beans.values().stream().forEach(o -> {
-            //解析注册服务，缓存接口名引用
-            processor.put(o.getInterfaceClass().getName(), o.getRef());
+            //解析注册服务，生成方法调用器
+            registry.register(o.getInterfaceClass(), o.getRef());
+            //校验压缩方式，未知时启动失败
+            CompressorFactory.getByName(o.getCompression());
+            configs.put(InvokerIds.serviceName(o.getInterfaceClass()), o);
         });
     }
 
@@ -45,8 +116,26 @@ public class NettyServerHandler extends ChannelInboundHandlerAdapter {
         ctx.fireChannelActive();
     }
 
+    /**
+     * 连接断开，结束该连接上的流式响应，取消带截止时间的请求(consumer已不可达)
+     * @param ctx
+     * @throws Exception
+     */
     @Override
     public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        Map<Long, ResponseStream> streams = ctx.channel().attr(STREAMS).get();
+        if (streams != null) {
+            for (ResponseStream stream : streams.values()) {
+                stream.cancel();
+            }
+            streams.clear();
+        }
+        Map<Long, RequestExecution> executions = ctx.channel().attr(EXECUTIONS).get();
+        if (executions != null) {
+            for (RequestExecution execution : executions.values()) {
+                execution.cancel();
+            }
+        }
         ctx.fireChannelInactive();
     }
 
@@ -56,40 +145,367 @@ public class NettyServerHandler extends ChannelInboundHandlerAdapter {
             //空对象，直接抛弃
             return;
         }
+        if (msg instanceof HandshakePacket) {
+            //握手：回写方法字典
+            HandshakePacket handshake = new HandshakePacket();
+            handshake.setProtocolType(((HandshakePacket) msg).getProtocolType());
+            handshake.setMethodKeys(registry.getDictionary());
+            ctx.writeAndFlush(handshake);
+            return;
+        }
+        if (msg instanceof HeartbeatPacket) {
+            //心跳：回写pong
+            HeartbeatPacket pong = new HeartbeatPacket();
+            pong.setProtocolType(((HeartbeatPacket) msg).getProtocolType());
+            pong.setPong(true);
+            ctx.writeAndFlush(pong);
+            return;
+        }
+        if (msg instanceof StreamCreditPacket) {
+            //流式响应额度/取消
+            StreamCreditPacket credit = (StreamCreditPacket) msg;
+            ResponseStream stream = attrMap(ctx.channel(), STREAMS).get(credit.getRequestId());
+            if (stream != null) {
+                if (credit.isCancel()) {
+                    stream.cancel();
+                } else {
+                    stream.grant(credit.getCredits());
+                }
+            }
+            return;
+        }
+        if (msg instanceof CancelPacket) {
+            //consumer取消：跳过未执行的请求，中断执行中的请求
+            RequestExecution execution = attrMap(ctx.channel(), EXECUTIONS).get(((CancelPacket) msg).getRequestId());
+            if (execution != null) {
+                execution.cancel();
+            }
+            return;
+        }
+        if (msg instanceof BatchRequestPacket) {
+            processBatch(ctx, (BatchRequestPacket) msg);
+            return;
+        }
         RequestPacket requestRpc = (RequestPacket)msg;
-        if (StringUtils.isBlank(requestRpc.getRequestId()) || requestRpc.getProtocolType() == null) {
+        if (requestRpc.getRequestId() <= 0 || requestRpc.getProtocolType() == null) {
             //无编号 or 无协议类型，直接抛弃
             return;
         }
-        //创建响应体，并同步请求编号 & 协议类型
-        ResponsePacket responseRpc = new ResponsePacket();
-        responseRpc.setRequestId(requestRpc.getRequestId());
-        responseRpc.setProtocolType(requestRpc.getProtocolType());
+        MethodInvoker invoker = registry.get(requestRpc);
+        if (invoker == null) {
+            //未注册的服务方法，回写错误响应(单向请求只记录日志)
+            log.warn("No method[serviceId={}, methodId={}, className={}, methodName={}] found for the request[{}]", requestRpc.getServiceId(),
+                    requestRpc.getMethodId(), requestRpc.getClassName(), requestRpc.getMethodName(), requestRpc.getRequestId());
+            if (requestRpc.isOneWay()) {
+                return;
+            }
+            ctx.writeAndFlush(notFound(requestRpc));
+            return;
+        }
+        if (invoker.isStreaming() && !requestRpc.isOneWay()) {
+            //流式方法：先注册流，随后到达的额度可以找到
+            Map<Long, ResponseStream> streams = attrMap(ctx.channel(), STREAMS);
+            streams.put(requestRpc.getRequestId(), new ResponseStream(requestRpc.getRequestId(), ctx.channel(), streams,
+                    dispatcher, invoker.getServiceName()));
+        }
+        RequestExecution execution = null;
+        if (requestRpc.getTimeout() > 0 && !requestRpc.isOneWay() && !invoker.isStreaming()) {
+            //带截止时间的请求：先注册执行，随后到达的取消可以找到
+            requestRpc.setDeadline(System.currentTimeMillis() + requestRpc.getTimeout());
+            Map<Long, RequestExecution> executions = attrMap(ctx.channel(), EXECUTIONS);
+            execution = new RequestExecution(requestRpc, executions);
+            executions.put(requestRpc.getRequestId(), execution);
+        }
+        final RequestExecution current = execution;
         try {
-            if(StringUtils.isBlank(requestRpc.getClassName())){
-                new RuntimeException("Param[className] can not be null");
+            //分发到业务线程执行
+            dispatcher.dispatch(invoker.getServiceName(), () -> process(ctx, requestRpc, invoker, current));
+        } catch (RejectedExecutionException e) {
+            //繁忙，回写错误响应(单向请求只记录日志)
+            log.warn("Request[{}] of service[{}] rejected", requestRpc.getRequestId(), invoker.getServiceName());
+            if (requestRpc.isOneWay()) {
+                return;
             }
-            if(StringUtils.isBlank(requestRpc.getMethodName())){
-                new RuntimeException("Param[methodName] can not be null");
+            attrMap(ctx.channel(), STREAMS).remove(requestRpc.getRequestId());
+            if (execution != null) {
+                execution.cancel();
             }
-            //通过服务注册表，获取方法，用该实例反射方式执行方法获取结果
-            Object bean = processor.get(requestRpc.getClassName());
-            if (bean == null) {
-                //未发现实例引用时，尝试查找类加载器中的类，并创建实例
-                log.warn("No instance of Class[{}] found for the request[{}], and will retry to create a new instance", requestRpc.getClassName(), requestRpc.getRequestId());
+            ctx.writeAndFlush(busy(requestRpc, invoker));
+        }
+    }
+
+    /**
+     * 批量请求：全部执行完成后按位置回写一个批量响应
+     *          1.未注册的方法、被拒绝的请求在对应位置写入错误响应
+     *          2.并行：每个请求单独分发到所属服务的业务线程
+     *          3.顺序：整批分发到第一个请求所属服务的业务线程，依次执行
+     *          4.执行前已超过截止时间的请求不执行，在对应位置写入超时错误响应
+     * @param ctx
+     * @param batch
+     */
+    private void processBatch(ChannelHandlerContext ctx, BatchRequestPacket batch) {
+        RequestPacket[] requests = batch.getRequests();
+        if (batch.getRequestId() <= 0 || requests == null || requests.length == 0) {
+            //无编号 or 无请求，直接抛弃
+            return;
+        }
+        ResponsePacket[] responses = new ResponsePacket[requests.length];
+        MethodInvoker[] invokers = new MethodInvoker[requests.length];
+        //剩余未完成数，为0时回写；数组元素的可见性由计数器的原子操作保证
+        AtomicInteger remaining = new AtomicInteger(requests.length);
+        Runnable complete = () -> {
+            if (remaining.decrementAndGet() == 0) {
+                BatchResponsePacket response = new BatchResponsePacket();
+                response.setRequestId(batch.getRequestId());
+                response.setProtocolType(batch.getProtocolType());
+                response.setSerializerId(batch.getSerializerId());
+                response.setResponses(responses);
+                for (MethodInvoker invoker : invokers) {
+                    if (invoker != null) {
+                        compress(response, invoker.getServiceName());
+                        break;
+                    }
+                }
+                ctx.writeAndFlush(RpcEncoder.precompress(ctx.channel(), response)).addListener(WRITE_LISTENER);
+            }
+        };
+        String serviceName = null;
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < requests.length; i++) {
+            if (requests[i].getTimeout() > 0) {
+                requests[i].setDeadline(now + requests[i].getTimeout());
+            }
+            invokers[i] = registry.get(requests[i]);
+            if (invokers[i] == null) {
+                log.warn("No method[serviceId={}, methodId={}, className={}, methodName={}] found in the batch request[{}]", requests[i].getServiceId(),
+                        requests[i].getMethodId(), requests[i].getClassName(), requests[i].getMethodName(), batch.getRequestId());
+                responses[i] = notFound(requests[i]);
+            } else if (serviceName == null) {
+                serviceName = invokers[i].getServiceName();
+            }
+        }
+        if (serviceName == null) {
+            //全部未找到
+            for (int i = 0; i < requests.length; i++) {
+                complete.run();
+            }
+            return;
+        }
+        if (batch.isParallel()) {
+            for (int i = 0; i < requests.length; i++) {
+                if (invokers[i] == null) {
+                    complete.run();
+                    continue;
+                }
+                final int index = i;
                 try {
-                    bean = Class.forName(requestRpc.getClassName()).newInstance();
-                } catch (Exception e) {
-                    new RuntimeException(String.format("No service for class[%s] found.", requestRpc.getClassName()));
+                    dispatcher.dispatch(invokers[i].getServiceName(), () -> {
+                        responses[index] = executeInBatch(requests[index], invokers[index]);
+                        complete.run();
+                    });
+                } catch (RejectedExecutionException e) {
+                    responses[i] = busy(requests[i], invokers[i]);
+                    complete.run();
                 }
             }
-            Method method = bean.getClass().getMethod(requestRpc.getMethodName(), requestRpc.getParamType());
-            if (method == null) {
-                //未查到方法的异常抛出
-                new RuntimeException(String.format("Method[%s] no found", requestRpc.getMethodName()));
+            return;
+        }
+        try {
+            dispatcher.dispatch(serviceName, () -> {
+                for (int i = 0; i < requests.length; i++) {
+                    if (invokers[i] != null) {
+                        responses[i] = executeInBatch(requests[i], invokers[i]);
+                    }
+                    complete.run();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("Batch request[{}] of service[{}] rejected", batch.getRequestId(), serviceName);
+            for (int i = 0; i < requests.length; i++) {
+                if (invokers[i] != null) {
+                    responses[i] = busy(requests[i], invokers[i]);
+                }
+                complete.run();
+            }
+        }
+    }
+
+    /**
+     * 未注册方法的错误响应
+     * @param requestRpc
+     * @return
+     */
+    private ResponsePacket notFound(RequestPacket requestRpc) {
+        ResponsePacket responseRpc = newResponse(requestRpc);
+        responseRpc.setThrowable(new ServiceException(ServiceCodeEnum.SERVICE_NOT_FOUND.getCode(),
+                String.format(ServiceCodeEnum.SERVICE_NOT_FOUND.getValue(), requestRpc.getClassName() == null ?
+                        requestRpc.getServiceId() + "#" + requestRpc.getMethodId() : requestRpc.getClassName() + "." + requestRpc.getMethodName())));
+        return responseRpc;
+    }
+
+    /**
+     * 服务繁忙的错误响应
+     * @param requestRpc
+     * @param invoker
+     * @return
+     */
+    private ResponsePacket busy(RequestPacket requestRpc, MethodInvoker invoker) {
+        ResponsePacket responseRpc = newResponse(requestRpc);
+        responseRpc.setThrowable(new ServiceException(ServiceCodeEnum.SERVICE_BUSY.getCode(),
+                String.format(ServiceCodeEnum.SERVICE_BUSY.getValue(), invoker.getServiceName())));
+        return responseRpc;
+    }
+
+    /**
+     * 执行批量请求中的一个请求，已超过截止时间时不执行，返回超时错误响应
+     * @param requestRpc
+     * @param invoker
+     * @return
+     */
+    private ResponsePacket executeInBatch(RequestPacket requestRpc, MethodInvoker invoker) {
+        if (!requestRpc.isExpired()) {
+            return execute(requestRpc, invoker);
+        }
+        ResponsePacket responseRpc = newResponse(requestRpc);
+        responseRpc.setThrowable(new ServiceException(ServiceCodeEnum.SERVICE_TIMEOUT.getCode(),
+                String.format(ServiceCodeEnum.SERVICE_TIMEOUT.getValue(), requestRpc.getTimeout())));
+        return responseRpc;
+    }
+
+    /**
+     * 创建响应体，并同步请求编号 & 协议类型 & 序列化方式
+     * @param requestRpc
+     * @return
+     */
+    private ResponsePacket newResponse(RequestPacket requestRpc) {
+        ResponsePacket responseRpc = new ResponsePacket();
+        responseRpc.setRequestId(requestRpc.getRequestId());
+        responseRpc.setProtocolType(requestRpc.getProtocolType());
+        //响应使用与请求相同的序列化方式
+        responseRpc.setSerializerId(requestRpc.getSerializerId());
+        return responseRpc;
+    }
+
+    /**
+     * 执行服务方法，回写响应
+     * @param ctx
+     * @param requestRpc
+     * @param invoker   方法调用器
+     * @param execution 带截止时间的执行，请求未携带剩余等待时间时为null
+     */
+    private void process(ChannelHandlerContext ctx, RequestPacket requestRpc, MethodInvoker invoker, RequestExecution execution) {
+        if (requestRpc.isOneWay()) {
+            //单向请求：只执行方法，不编码、不回写响应
+            try {
+                invoker.invoke(requestRpc.getArgs());
+            } catch (Exception e) {
+                log.error(String.format("Process one-way request[%s] failed", requestRpc.getRequestId()), e);
+            }
+            return;
+        }
+        if (invoker.isStreaming()) {
+            processStream(ctx, requestRpc, invoker);
+            return;
+        }
+        if (execution == null) {
+            //回写响应，flush由FlushConsolidationHandler合并
+            ctx.writeAndFlush(RpcEncoder.precompress(ctx.channel(), execute(requestRpc, invoker))).addListener(WRITE_LISTENER);
+            return;
+        }
+        if (!execution.begin(ctx.executor())) {
+            //排队期间已超时 or 已被取消，consumer不再等待
+            if (log.isDebugEnabled()) {
+                log.debug("Request[{}] expired or cancelled before execution, skipped", requestRpc.getRequestId());
+            }
+            return;
+        }
+        ResponsePacket responseRpc;
+        boolean completed;
+        try {
+            responseRpc = execute(requestRpc, invoker);
+        } finally {
+            completed = execution.end();
+        }
+        if (!completed) {
+            //执行超时 or 执行中被取消，不回写无人接收的响应
+            if (log.isDebugEnabled()) {
+                log.debug("Request[{}] expired or cancelled during execution, response dropped", requestRpc.getRequestId());
+            }
+            return;
+        }
+        ctx.writeAndFlush(RpcEncoder.precompress(ctx.channel(), responseRpc)).addListener(WRITE_LISTENER);
+    }
+
+    /**
+     * 执行流式方法：成功时按consumer的额度分块回写迭代结果，失败时回写错误响应
+     * @param ctx
+     * @param requestRpc
+     * @param invoker
+     */
+    private void processStream(ChannelHandlerContext ctx, RequestPacket requestRpc, MethodInvoker invoker) {
+        ResponseStream stream = attrMap(ctx.channel(), STREAMS).get(requestRpc.getRequestId());
+        if (stream == null) {
+            //连接已断开 or consumer已取消
+            return;
+        }
+        ResponsePacket responseRpc = execute(requestRpc, invoker);
+        if (responseRpc.getThrowable() != null) {
+            stream.cancel();
+            ctx.writeAndFlush(RpcEncoder.precompress(ctx.channel(), responseRpc)).addListener(WRITE_LISTENER);
+            return;
+        }
+        StreamPacket template = new StreamPacket();
+        template.setProtocolType(requestRpc.getProtocolType());
+        template.setSerializerId(requestRpc.getSerializerId());
+        compress(template, invoker.getServiceName());
+        stream.start((Iterator<?>) responseRpc.getResult(), template);
+    }
+
+    /**
+     * channel上按请求编号索引的对象(流式响应、请求执行)，不存在时创建
+     * @param channel
+     * @param key
+     * @return
+     */
+    private static <V> Map<Long, V> attrMap(Channel channel, AttributeKey<Map<Long, V>> key) {
+        Attribute<Map<Long, V>> attr = channel.attr(key);
+        Map<Long, V> map = attr.get();
+        if (map == null) {
+            map = new ConcurrentHashMap<>();
+            Map<Long, V> exists = attr.setIfAbsent(map);
+            if (exists != null) {
+                map = exists;
             }
+        }
+        return map;
+    }
 
-            Object result = method.invoke(bean, requestRpc.getArgs());
+    /**
+     * 按服务配置设置响应压缩，是否压缩由编码器按阈值决定
+     * @param packet
+     * @param serviceName
+     */
+    private void compress(RpcPacket packet, String serviceName) {
+        ServiceConfig config = configs.get(serviceName);
+        Compressor compressor = config == null ? null : CompressorFactory.getByName(config.getCompression());
+        if (compressor != null) {
+            packet.setCompressorId(compressor.getId());
+            packet.setCompressThreshold(config.getCompressThreshold());
+        }
+    }
+
+    /**
+     * 执行服务方法，生成响应
+     * @param requestRpc
+     * @param invoker   方法调用器
+     * @return
+     */
+    private ResponsePacket execute(RequestPacket requestRpc, MethodInvoker invoker) {
+        ResponsePacket responseRpc = newResponse(requestRpc);
+        compress(responseRpc, invoker.getServiceName());
+        try {
+            //使用预编译的调用器执行方法获取结果
+            Object result = invoker.invoke(requestRpc.getArgs());
             //执行成供后把结果放入响应包中
             responseRpc.setResult(result);
         } catch (Exception e){
@@ -97,14 +513,23 @@ public class NettyServerHandler extends ChannelInboundHandlerAdapter {
             log.error(String.format("Process request[%s] failed", responseRpc.getRequestId()), e);
             responseRpc.setThrowable(e);
         }
+        return responseRpc;
+    }
 
-        //回写响应
-        ctx.writeAndFlush(responseRpc).addListener(new ChannelFutureListener() {
-            @Override
-            public void operationComplete(ChannelFuture channelFuture) throws Exception {
-                log.info(responseRpc.getRequestId() + " processed.");
-            }
-        });
+    /**
+     * 读空闲：超时未收到请求或心跳，consumer已不可达(半开连接)，关闭连接
+     * @param ctx
+     * @param evt
+     * @throws Exception
+     */
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt instanceof IdleStateEvent && ((IdleStateEvent) evt).state() == IdleState.READER_IDLE) {
+            log.info("Channel[{}] idle, close it", ctx.channel().remoteAddress());
+            ctx.close();
+            return;
+        }
+        ctx.fireUserEventTriggered(evt);
     }
 
     @Override
@@ -112,8 +537,20 @@ public class NettyServerHandler extends ChannelInboundHandlerAdapter {
         super.channelReadComplete(ctx);
     }
 
+    /**
+     * 背压：出站缓冲超过高水位(consumer读取慢)时暂停读取该连接的请求，回落到低水位以下时恢复读取，避免响应在内存中无限堆积
+     * @param ctx
+     * @throws Exception
+     */
     @Override
     public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        boolean writable = ctx.channel().isWritable();
+        ctx.channel().config().setAutoRead(writable);
+        if (!writable) {
+            log.warn("Channel[{}] not writable, pause reading", ctx.channel().remoteAddress());
+        } else {
+            log.info("Channel[{}] writable, resume reading", ctx.channel().remoteAddress());
+        }
         super.channelWritabilityChanged(ctx);
     }
 
@@ -0,0 +1,179 @@
+package com.tiger.rpc.netty.serializer;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.tiger.rpc.common.enums.ProtocolTypeEnum;
+import com.tiger.rpc.netty.packet.BatchRequestPacket;
+import com.tiger.rpc.netty.packet.BatchResponsePacket;
+import com.tiger.rpc.netty.packet.CancelPacket;
+import com.tiger.rpc.netty.packet.RequestPacket;
+import com.tiger.rpc.netty.packet.ResponsePacket;
+import com.tiger.rpc.netty.packet.StreamCreditPacket;
+import com.tiger.rpc.netty.packet.StreamPacket;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * @ClassName: KryoSerializer.java
+ *
+ * @Description: kryo序列化，适合字段较多的pojo
+ *              1.数据包及常用类型按固定顺序注册，注册类型只写编号；未注册类型写类名
+ *              2.业务类型可通过{@link #registerClasses(Class[])}注册，consumer与provider需按相同顺序注册
+ *              3.kryo非线程安全，每个线程持有一份kryo和输入/输出
+ *              4.异常响应不使用kryo(jdk异常内部不可变集合无法反序列化)，本帧回退到默认序列化
+ *
+ * @Author: Tiger
+ *
+ * @Date: 2021/6/8
+ */
+public class KryoSerializer implements Serializer {
+
+    public static final byte ID = 2;
+
+    public static final String NAME = "kryo";
+
+    /**
+     * 注册类型，按顺序注册
+     */
+    private static final List<Class<?>> REGISTERED_CLASSES = new CopyOnWriteArrayList<>();
+
+    static {
+        registerClasses(RequestPacket.class, ResponsePacket.class, ProtocolTypeEnum.class, Class[].class, Object[].class,
+                ArrayList.class, LinkedList.class, HashMap.class, LinkedHashMap.class, HashSet.class,
+                Date.class, BigDecimal.class, BigInteger.class,
+                BatchRequestPacket.class, BatchResponsePacket.class, RequestPacket[].class, ResponsePacket[].class,
+                StreamPacket.class, StreamCreditPacket.class, CancelPacket.class);
+    }
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private static final ThreadLocal<KryoHolder> HOLDER = ThreadLocal.withInitial(KryoHolder::new);
+
+    /**
+     * 注册业务类型，已注册的跳过
+     * @param classes
+     */
+    public static synchronized void registerClasses(Class<?>... classes) {
+        for (Class<?> clazz : classes) {
+            if (!REGISTERED_CLASSES.contains(clazz)) {
+                REGISTERED_CLASSES.add(clazz);
+            }
+        }
+    }
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean supports(Object packet) {
+        if (packet instanceof BatchResponsePacket) {
+            for (ResponsePacket response : ((BatchResponsePacket) packet).getResponses()) {
+                if (!supports(response)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (packet instanceof StreamPacket) {
+            return ((StreamPacket) packet).getThrowable() == null;
+        }
+        return !(packet instanceof ResponsePacket && ((ResponsePacket) packet).getThrowable() != null);
+    }
+
+    @Override
+    public void serialize(Object packet, ByteBuf out) {
+        KryoHolder holder = HOLDER.get().sync();
+        Output output = holder.output;
+        output.setOutputStream(new ByteBufOutputStream(out));
+        try {
+            holder.kryo.writeObject(output, packet);
+            output.flush();
+        } finally {
+            output.setOutputStream(null);
+        }
+    }
+
+    @Override
+    public <T> T deserialize(ByteBuf in, Class<T> clazz) {
+        KryoHolder holder = HOLDER.get().sync();
+        if (in.hasArray()) {
+            //heap buffer直接读取底层数组
+            Input input = holder.arrayInput;
+            input.setBuffer(in.array(), in.arrayOffset() + in.readerIndex(), in.readableBytes());
+            try {
+                return holder.kryo.readObject(input, clazz);
+            } finally {
+                input.setBuffer(EMPTY);
+            }
+        }
+        Input input = holder.streamInput;
+        input.setInputStream(new ByteBufInputStream(in));
+        try {
+            return holder.kryo.readObject(input, clazz);
+        } finally {
+            input.setInputStream(null);
+        }
+    }
+
+    /**
+     * 线程内kryo及输入/输出
+     */
+    private static class KryoHolder {
+
+        private final Kryo kryo = new Kryo();
+
+        private final Output output = new Output(4096);
+
+        /**
+         * 流方式读取，使用自有buffer
+         */
+        private final Input streamInput = new Input(4096);
+
+        /**
+         * 数组方式读取，直接使用外部数组，不能与流方式共用
+         */
+        private final Input arrayInput = new Input();
+
+        /**
+         * 已注册数量
+         */
+        private int registered = 0;
+
+        KryoHolder() {
+            kryo.setRegistrationRequired(false);
+            kryo.setInstantiatorStrategy(new Kryo.DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
+        }
+
+        /**
+         * 同步后注册的类型
+         * @return
+         */
+        KryoHolder sync() {
+            while (registered < REGISTERED_CLASSES.size()) {
+                kryo.register(REGISTERED_CLASSES.get(registered++));
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.tiger.rpc.netty.serializer;
+
+import com.tiger.rpc.netty.utils.ProtoStuffUtil;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+
+/**
+ * @ClassName: ProtostuffSerializer.java
+ *
+ * @Description: protostuff序列化，默认序列化方式，支持所有数据包
+ *
+ * @Author: Tiger
+ *
+ * @Date: 2021/6/8
+ */
+public class ProtostuffSerializer implements Serializer {
+
+    public static final byte ID = 1;
+
+    public static final String NAME = "protostuff";
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void serialize(Object packet, ByteBuf out) {
+        ProtoStuffUtil.serialize(packet, new ByteBufOutputStream(out));
+    }
+
+    @Override
+    public <T> T deserialize(ByteBuf in, Class<T> clazz) {
+        //heap buffer直接读取底层数组，direct buffer通过流读取
+        if (in.hasArray()) {
+            return ProtoStuffUtil.deserialize(in.array(), in.arrayOffset() + in.readerIndex(), in.readableBytes(), clazz);
+        }
+        return ProtoStuffUtil.deserialize(new ByteBufInputStream(in), clazz);
+    }
+}
@@ -0,0 +1,108 @@
+package com.tiger.rpc.netty.serializer;
+
+import com.tiger.rpc.netty.packet.RequestPacket;
+import com.tiger.rpc.netty.packet.ResponsePacket;
+import io.netty.buffer.ByteBuf;
+
+import java.io.IOException;
+
+/**
+ * @ClassName: RawBytesSerializer.java
+ *
+ * @Description: 字节数组透传，适合参数/结果本身已是序列化数据(byte[])的服务
+ *              1.数据格式：envelopeLength | envelope(protostuff，不含字节数组) | raw bytes
+ *              2.仅单个byte[]参数的请求、byte[]结果的响应使用透传，其他数据包本帧回退到默认序列化
+ *
+ * @Author: Tiger
+ *
+ * @Date: 2021/6/8
+ */
+public class RawBytesSerializer implements Serializer {
+
+    public static final byte ID = 3;
+
+    public static final String NAME = "raw";
+
+    /**
+     * 信封序列化
+     */
+    private final Serializer envelopeSerializer = new ProtostuffSerializer();
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean supports(Object packet) {
+        if (packet instanceof RequestPacket) {
+            Object[] args = ((RequestPacket) packet).getArgs();
+            return args != null && args.length == 1 && args[0] instanceof byte[];
+        }
+        if (packet instanceof ResponsePacket) {
+            ResponsePacket response = (ResponsePacket) packet;
+            return response.getThrowable() == null && response.getResult() instanceof byte[];
+        }
+        return false;
+    }
+
+    @Override
+    public void serialize(Object packet, ByteBuf out) throws IOException {
+        //取出字节数组，信封中不包含，写完后还原
+        byte[] raw;
+        if (packet instanceof RequestPacket) {
+            RequestPacket request = (RequestPacket) packet;
+            Object[] args = request.getArgs();
+            raw = (byte[]) args[0];
+            request.setArgs(null);
+            try {
+                writeEnvelope(packet, out);
+            } finally {
+                request.setArgs(args);
+            }
+        } else {
+            ResponsePacket response = (ResponsePacket) packet;
+            raw = (byte[]) response.getResult();
+            response.setResult(null);
+            try {
+                writeEnvelope(packet, out);
+            } finally {
+                response.setResult(raw);
+            }
+        }
+        //透传字节数组
+        out.writeBytes(raw);
+    }
+
+    @Override
+    public <T> T deserialize(ByteBuf in, Class<T> clazz) throws IOException {
+        int envelopeLength = in.readInt();
+        T packet = envelopeSerializer.deserialize(in.readSlice(envelopeLength), clazz);
+        byte[] raw = new byte[in.readableBytes()];
+        in.readBytes(raw);
+        if (packet instanceof RequestPacket) {
+            ((RequestPacket) packet).setArgs(new Object[]{raw});
+        } else if (packet instanceof ResponsePacket) {
+            ((ResponsePacket) packet).setResult(raw);
+        }
+        return packet;
+    }
+
+    /**
+     * 写入信封，回填信封长度
+     * @param packet
+     * @param out
+     * @throws IOException
+     */
+    private void writeEnvelope(Object packet, ByteBuf out) throws IOException {
+        int lengthIndex = out.writerIndex();
+        out.writeInt(0);
+        envelopeSerializer.serialize(packet, out);
+        out.setInt(lengthIndex, out.writerIndex() - lengthIndex - 4);
+    }
+}
@@ -0,0 +1,60 @@
+package com.tiger.rpc.netty.serializer;
+
+import io.netty.buffer.ByteBuf;
+
+import java.io.IOException;
+
+/**
+ * @ClassName: Serializer.java
+ *
+ * @Description: 数据包序列化SPI
+ *              1.编号写入帧头，解码时根据编号选择序列化方式
+ *              2.名称用于服务注册/发现时协商，写入zk的provider节点数据
+ *              3.内置protostuff、kryo、raw，可通过META-INF/services扩展
+ *
+ * @Author: Tiger
+ *
+ * @Date: 2021/6/8
+ */
+public interface Serializer {
+
+    /**
+     * 序列化编号，全局唯一，写入帧头
+     * @return
+     */
+    byte getId();
+
+    /**
+     * 序列化名称，全局唯一，用于协商
+     * @return
+     */
+    String getName();
+
+    /**
+     * 是否支持序列化该数据包，不支持时本帧回退到默认序列化方式
+     * @param packet    数据包
+     * @return
+     */
+    default boolean supports(Object packet) {
+        return true;
+    }
+
+    /**
+     * 序列化，直接写入out
+     * @param packet    数据包
+     * @param out   输出buffer
+     * @throws IOException
+     */
+    void serialize(Object packet, ByteBuf out) throws IOException;
+
+    /**
+     * 反序列化
+     * @param in    输入buffer，只包含一个完整数据包
+     * @param clazz 数据包类型
+     * @param <T>
+     * @return
+     * @throws IOException
+     */
+    <T> T deserialize(ByteBuf in, Class<T> clazz) throws IOException;
+
+}
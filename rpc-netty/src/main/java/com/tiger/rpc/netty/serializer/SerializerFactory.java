@@ -0,0 +1,133 @@
+package com.tiger.rpc.netty.serializer;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @ClassName: SerializerFactory.java
+ *
+ * @Description: 序列化注册表
+ *              1.内置protostuff(默认)、kryo、raw，并通过{@link ServiceLoader}加载扩展
+ *              2.按帧头编号查找序列化方式
+ *              3.consumer按偏好顺序与provider支持列表协商，无共同方式时使用默认
+ *
+ * @Author: Tiger
+ *
+ * @Date: 2021/6/8
+ */
+@Slf4j
+public final class SerializerFactory {
+
+    /**
+     * 列表分隔符
+     */
+    public static final String SEPARATOR = ",";
+
+    /**
+     * 编号 <---> 序列化
+     */
+    private static final Serializer[] SERIALIZERS = new Serializer[Byte.MAX_VALUE + 1];
+
+    /**
+     * 名称 <---> 序列化
+     */
+    private static final Map<String, Serializer> NAMED_SERIALIZERS = new ConcurrentHashMap<>();
+
+    /**
+     * 默认序列化
+     */
+    private static final Serializer DEFAULT_SERIALIZER = new ProtostuffSerializer();
+
+    static {
+        register(DEFAULT_SERIALIZER);
+        register(new KryoSerializer());
+        register(new RawBytesSerializer());
+        for (Serializer serializer : ServiceLoader.load(Serializer.class)) {
+            register(serializer);
+        }
+    }
+
+    private SerializerFactory() {
+    }
+
+    /**
+     * 注册序列化方式，编号或名称重复时抛出异常
+     * @param serializer
+     */
+    public static synchronized void register(Serializer serializer) {
+        byte id = serializer.getId();
+        if (id <= 0) {
+            throw new IllegalArgumentException("Serializer id must be positive: " + serializer.getClass().getName());
+        }
+        if (SERIALIZERS[id] != null || NAMED_SERIALIZERS.containsKey(serializer.getName())) {
+            throw new IllegalArgumentException(String.format("Serializer[%s:%s] already registered", id, serializer.getName()));
+        }
+        SERIALIZERS[id] = serializer;
+        NAMED_SERIALIZERS.put(serializer.getName(), serializer);
+        log.debug("Serializer[{}:{}] registered", id, serializer.getName());
+    }
+
+    public static Serializer getDefault() {
+        return DEFAULT_SERIALIZER;
+    }
+
+    /**
+     * 根据编号获取
+     * @param id
+     * @return 不存在时返回null
+     */
+    public static Serializer getById(byte id) {
+        return id > 0 ? SERIALIZERS[id] : null;
+    }
+
+    /**
+     * 根据名称获取
+     * @param name
+     * @return 不存在时返回null
+     */
+    public static Serializer getByName(String name) {
+        return name == null ? null : NAMED_SERIALIZERS.get(name.trim());
+    }
+
+    /**
+     * 选择数据包的序列化方式：指定方式不存在或者不支持该数据包时使用默认方式
+     * @param id    指定编号
+     * @param packet    数据包
+     * @return
+     */
+    public static Serializer select(byte id, Object packet) {
+        Serializer serializer = getById(id);
+        if (serializer == null || !serializer.supports(packet)) {
+            return DEFAULT_SERIALIZER;
+        }
+        return serializer;
+    }
+
+    /**
+     * 协商序列化方式：按consumer偏好顺序选择provider支持的第一个
+     * @param preferred consumer偏好列表，逗号分隔，为空时使用默认
+     * @param supported provider支持列表，逗号分隔，为空时只支持默认
+     * @return
+     */
+    public static Serializer negotiate(String preferred, String supported) {
+        if (StringUtils.isBlank(preferred) || StringUtils.isBlank(supported)) {
+            return DEFAULT_SERIALIZER;
+        }
+        String[] supportedNames = StringUtils.split(supported, SEPARATOR);
+        for (String name : StringUtils.split(preferred, SEPARATOR)) {
+            for (String supportedName : supportedNames) {
+                if (name.trim().equals(supportedName.trim())) {
+                    Serializer serializer = getByName(name);
+                    if (serializer != null) {
+                        return serializer;
+                    }
+                }
+            }
+        }
+        return DEFAULT_SERIALIZER;
+    }
+}
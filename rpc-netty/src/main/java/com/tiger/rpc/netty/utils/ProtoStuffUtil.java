@@ -5,10 +5,19 @@ import com.dyuproject.protostuff.ProtostuffIOUtil;
 import com.dyuproject.protostuff.Schema;
 import com.dyuproject.protostuff.runtime.RuntimeSchema;
 import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.objenesis.Objenesis;
 import org.objenesis.ObjenesisStd;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -19,19 +28,53 @@ import java.util.concurrent.ConcurrentHashMap;
  *               2.使用常用的rpc序列化工具protostuff
  *               3.如果此处使用fastjson，则对参数/结果的复杂对象需要手动转换
  *               4.protoStuff提升性能，减少空间占用
+ *               5.每个线程(io线程即每个event loop)复用LinkedBuffer，按类型上次序列化大小选择小/大两档buffer
+ *               6.服务注册/引入时预热参数、返回值类型的schema，避免首次调用时创建
  *
  * @Author: Tiger
  *
  * @Date: 2021/3/30
  */
+@Slf4j
 @NoArgsConstructor
 public class ProtoStuffUtil {
 
+    /**
+     * 小buffer大小
+     */
+    private static final int SMALL_BUFFER_SIZE = LinkedBuffer.DEFAULT_BUFFER_SIZE;
+
+    /**
+     * 大buffer大小
+     */
+    private static final int LARGE_BUFFER_SIZE = 8 * 1024;
+
     /**
      * 缓存class <---> schema 键值对
      */
     private static Map<Class<?>, Schema<?>> cachedSchema = new ConcurrentHashMap<>();
 
+    /**
+     * 当前线程上次序列化超过小buffer的class，用于选择buffer档位
+     * 线程内读写，只在跨越小buffer大小时修改，其他线程的大对象不影响本线程
+     */
+    private static final ThreadLocal<Set<Class<?>>> LARGE_CLASSES = ThreadLocal.withInitial(() -> Collections.newSetFromMap(new IdentityHashMap<>()));
+
+    /**
+     * 线程内复用的小buffer
+     */
+    private static final ThreadLocal<LinkedBuffer> SMALL_BUFFER = ThreadLocal.withInitial(() -> LinkedBuffer.allocate(SMALL_BUFFER_SIZE));
+
+    /**
+     * 线程内复用的大buffer
+     */
+    private static final ThreadLocal<LinkedBuffer> LARGE_BUFFER = ThreadLocal.withInitial(() -> LinkedBuffer.allocate(LARGE_BUFFER_SIZE));
+
+    /**
+     * 线程内复用的读buffer，与写buffer分开
+     */
+    private static final ThreadLocal<LinkedBuffer> READ_BUFFER = ThreadLocal.withInitial(() -> LinkedBuffer.allocate(LARGE_BUFFER_SIZE));
+
     /**
      * 使用objenesis创建对象，绕过构造器
      */
@@ -45,10 +88,21 @@ public class ProtoStuffUtil {
      */
     public static <T> byte[] serialize(T obj) {
         Class<T> cls = (Class<T>) obj.getClass();
-        LinkedBuffer buffer = LinkedBuffer.allocate(LinkedBuffer.DEFAULT_BUFFER_SIZE);
+        Set<Class<?>> largeClasses = LARGE_CLASSES.get();
+        boolean large = largeClasses.contains(cls);
+        LinkedBuffer buffer = large ? LARGE_BUFFER.get() : SMALL_BUFFER.get();
         try {
             Schema<T> schema = getSchema(cls);
-            return ProtostuffIOUtil.toByteArray(obj, schema, buffer);
+            byte[] data = ProtostuffIOUtil.toByteArray(obj, schema, buffer);
+            if (large != data.length > SMALL_BUFFER_SIZE) {
+                //跨越小buffer大小时切换档位
+                if (large) {
+                    largeClasses.remove(cls);
+                } else {
+                    largeClasses.add(cls);
+                }
+            }
+            return data;
         } catch (Exception e) {
             throw new IllegalStateException(e.getMessage(), e);
         } finally {
@@ -56,6 +110,27 @@ public class ProtoStuffUtil {
         }
     }
 
+    /**
+     * 序列化（对象 -> 输出流），直接写入输出流，不生成中间字节数组
+     * buffer只用于暂存后刷出，固定使用小buffer
+     * @param obj   对象
+     * @param out   输出流
+     * @param <T>   对象范型
+     * @return  写入字节数
+     */
+    public static <T> int serialize(T obj, OutputStream out) {
+        Class<T> cls = (Class<T>) obj.getClass();
+        LinkedBuffer buffer = SMALL_BUFFER.get();
+        try {
+            Schema<T> schema = getSchema(cls);
+            return ProtostuffIOUtil.writeTo(out, obj, schema, buffer);
+        } catch (IOException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        } finally {
+            buffer.clear();
+        }
+    }
+
     /**
      * 反序列化（字节数组 -> 对象）
      * @param data  数据
@@ -74,6 +149,47 @@ public class ProtoStuffUtil {
         }
     }
 
+    /**
+     * 反序列化（字节数组片段 -> 对象），直接读取已有数组，不复制
+     * @param data  数据
+     * @param offset    起始位置
+     * @param length    长度
+     * @param clazz   类
+     * @param <T>
+     * @return
+     */
+    public static <T> T deserialize(byte[] data, int offset, int length, Class<T> clazz) {
+        try {
+            T message = objenesis.newInstance(clazz);
+            Schema<T> schema = getSchema(clazz);
+            ProtostuffIOUtil.mergeFrom(data, offset, length, message, schema);
+            return message;
+        } catch (Exception e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 反序列化（输入流 -> 对象）
+     * @param in  输入流，只包含一个完整对象
+     * @param clazz   类
+     * @param <T>
+     * @return
+     */
+    public static <T> T deserialize(InputStream in, Class<T> clazz) {
+        LinkedBuffer buffer = READ_BUFFER.get();
+        try {
+            T message = objenesis.newInstance(clazz);
+            Schema<T> schema = getSchema(clazz);
+            ProtostuffIOUtil.mergeFrom(in, message, schema, buffer);
+            return message;
+        } catch (Exception e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        } finally {
+            buffer.clear();
+        }
+    }
+
     /**
      * 获取class的schema
      * @param clazz
@@ -83,9 +199,52 @@ public class ProtoStuffUtil {
     private static <T> Schema<T> getSchema(Class<T> clazz) {
         Schema<T> schema = (Schema<T>) cachedSchema.get(clazz);
         if (schema == null) {
-            schema = RuntimeSchema.createFrom(clazz);
-            cachedSchema.put(clazz, schema);
+            //原子创建，避免并发首次调用重复创建schema
+            schema = (Schema<T>) cachedSchema.computeIfAbsent(clazz, RuntimeSchema::createFrom);
         }
         return schema;
     }
+
+    /**
+     * 预热数据包schema
+     * @param packetClasses 数据包类型
+     */
+    public static void warmUp(Class<?>... packetClasses) {
+        for (Class<?> clazz : packetClasses) {
+            getSchema(clazz);
+        }
+    }
+
+    /**
+     * 预热接口所有方法参数、返回值类型的schema
+     * 参数/返回值作为数据包的动态字段，由protostuff运行时缓存schema
+     * @param interfaceClass    接口类型
+     */
+    public static void warmUpInterface(Class<?> interfaceClass) {
+        if (interfaceClass == null) {
+            return;
+        }
+        for (Method method : interfaceClass.getMethods()) {
+            for (Class<?> paramType : method.getParameterTypes()) {
+                warmUpType(paramType);
+            }
+            warmUpType(method.getReturnType());
+        }
+    }
+
+    /**
+     * 预热具体pojo类型，跳过基本类型、数组、枚举、jdk类型、接口及抽象类
+     * @param clazz
+     */
+    private static void warmUpType(Class<?> clazz) {
+        if (clazz.isPrimitive() || clazz.isArray() || clazz.isEnum() || clazz.isInterface()
+                || Modifier.isAbstract(clazz.getModifiers()) || clazz.getName().startsWith("java.")) {
+            return;
+        }
+        try {
+            RuntimeSchema.getSchema(clazz);
+        } catch (Exception e) {
+            log.warn("Warm up schema of class[{}] failed", clazz.getName(), e);
+        }
+    }
 }
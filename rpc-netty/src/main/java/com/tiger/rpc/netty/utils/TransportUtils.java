@@ -0,0 +1,91 @@
+package com.tiger.rpc.netty.utils;
+
+import com.tiger.rpc.netty.enums.TransportTypeEnum;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * @ClassName: TransportUtils.java
+ *
+ * @Description: 传输类型工具，根据传输类型选择事件线程池和channel类型
+ *              epoll不可用时(非linux或native库加载失败)回退到nio
+ *
+ * @Author: Tiger
+ *
+ * @Date: 2021/6/6
+ */
+@Slf4j
+public final class TransportUtils {
+
+    /**
+     * 默认出站缓冲水位：超过高水位时channel不可写，回落到低水位以下时恢复可写
+     */
+    public static final WriteBufferWaterMark DEFAULT_WRITE_BUFFER_WATER_MARK = new WriteBufferWaterMark(512 * 1024, 1024 * 1024);
+
+    private TransportUtils() {
+    }
+
+    /**
+     * 是否使用epoll
+     * @param transportType 传输类型，为空时按AUTO处理
+     * @return
+     */
+    public static boolean useEpoll(TransportTypeEnum transportType) {
+        if (transportType == TransportTypeEnum.NIO) {
+            return false;
+        }
+        if (Epoll.isAvailable()) {
+            return true;
+        }
+        if (transportType == TransportTypeEnum.EPOLL) {
+            //指定epoll但不可用，回退nio
+            log.warn("Epoll transport unavailable, fallback to nio", Epoll.unavailabilityCause());
+        }
+        return false;
+    }
+
+    /**
+     * 创建事件线程池
+     * @param epoll 是否使用epoll
+     * @param threads   线程数，0时使用netty默认值
+     * @param threadFactory 线程工厂，可为空
+     * @return
+     */
+    public static EventLoopGroup newEventLoopGroup(boolean epoll, int threads, ThreadFactory threadFactory) {
+        if (epoll) {
+            return threadFactory == null ? new EpollEventLoopGroup(threads) : new EpollEventLoopGroup(threads, threadFactory);
+        }
+        return threadFactory == null ? new NioEventLoopGroup(threads) : new NioEventLoopGroup(threads, threadFactory);
+    }
+
+    /**
+     * 服务端channel类型
+     * @param epoll
+     * @return
+     */
+    public static Class<? extends ServerChannel> serverChannelClass(boolean epoll) {
+        return epoll ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+    }
+
+    /**
+     * 客户端channel类型
+     * @param epoll
+     * @return
+     */
+    public static Class<? extends SocketChannel> socketChannelClass(boolean epoll) {
+        return epoll ? EpollSocketChannel.class : NioSocketChannel.class;
+    }
+
+}
@@ -108,6 +108,9 @@ public class ThriftReferenceProxyFactoryBean<T> implements FactoryBean<T>, Initi
             //设置重试次数
             handler.setRetry(config.getRetry());
         }
+        //设置调用总超时、重试预算
+        handler.setCallTimeout(config.getCallTimeout());
+        handler.setRetryBudgetRatio(config.getRetryBudgetRatio());
         //获取类加载器
 //        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
         ClassLoader classLoader = iFaceInterface.getClassLoader();
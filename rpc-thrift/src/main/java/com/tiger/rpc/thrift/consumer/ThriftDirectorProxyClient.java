@@ -52,6 +52,11 @@ public class ThriftDirectorProxyClient {
 	 */
 	private int retry = 0;
 
+	/**
+	 * 调用总超时(毫秒)，包含所有重试及退避等待，默认0不限制
+	 */
+	private int callTimeout;
+
 	/**
 	 * 不基于应用的直连代理执行
 	 * 不做缓存，使用时创建，使用后销毁
@@ -130,6 +135,7 @@ public class ThriftDirectorProxyClient {
 		handler.setProviderStrategy(providerStrategy);
 		handler.setClientFactory(ThriftUtils.getClientFactory(iFaceInterface));
 		handler.setRetry(retry);
+		handler.setCallTimeout(callTimeout);
 		//设置小集群地址
 		handler.setUris(uris);
 
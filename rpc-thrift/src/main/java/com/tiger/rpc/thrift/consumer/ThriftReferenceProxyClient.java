@@ -76,6 +76,9 @@ public class ThriftReferenceProxyClient {
 			//设置重试次数
 			handler.setRetry(config.getRetry());
 		}
+		//设置调用总超时、重试预算
+		handler.setCallTimeout(config.getCallTimeout());
+		handler.setRetryBudgetRatio(config.getRetryBudgetRatio());
 		//获取类加载器
 //		ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
 		ClassLoader classLoader = iFaceInterface.getClassLoader();
@@ -158,6 +161,9 @@ public class ThriftReferenceProxyClient {
 			//设置重试次数
 			handler.setRetry(config.getRetry());
 		}
+		//设置调用总超时、重试预算
+		handler.setCallTimeout(config.getCallTimeout());
+		handler.setRetryBudgetRatio(config.getRetryBudgetRatio());
 		//设置小集群地址
 		handler.setUris(uris);
 		//获取类加载器
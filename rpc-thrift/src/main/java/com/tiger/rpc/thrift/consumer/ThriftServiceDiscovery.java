@@ -101,6 +101,26 @@ public class ThriftServiceDiscovery extends ReferenceRegister {
 		//此处不做处理
 	}
 
+	/**
+	 * provider上线：连接池后台创建空闲连接
+	 * @param serviceName	服务名_版本号
+	 * @param address	provider地址(host:port)
+	 */
+	@Override
+	protected void onProviderOnline(String serviceName, String address) {
+		super.warmUpPool(pool, address);
+	}
+
+	/**
+	 * provider下线：连接池关闭空闲连接
+	 * @param serviceName	服务名_版本号
+	 * @param address	provider地址(host:port)
+	 */
+	@Override
+	protected void onProviderOffline(String serviceName, String address) {
+		super.drainPool(pool, address);
+	}
+
 	/**
 	 * 填充代理
 	 * @param referenceList
@@ -130,6 +150,9 @@ public class ThriftServiceDiscovery extends ReferenceRegister {
 					//设置重试次数
 					handler.setRetry(config.getRetry());
 				}
+				//设置调用总超时、重试预算
+				handler.setCallTimeout(config.getCallTimeout());
+				handler.setRetryBudgetRatio(config.getRetryBudgetRatio());
 				//获取类加载器
 //				ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
 				ClassLoader classLoader = config.getInterfaceClass().getClassLoader();
@@ -1,6 +1,5 @@
 package com.tiger.rpc.thrift.consumer;
 
-import com.alibaba.fastjson.JSON;
 import lombok.Builder;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
@@ -28,6 +27,11 @@ public class ThriftSocketPoolFactory extends BaseKeyedPooledObjectFactory<String
 	 */
 	private Integer timeout;
 
+	/**
+	 * 最大空闲时间(毫秒)：连接归还后超过该时间未使用时，校验不通过并重建，0为不限制
+	 */
+	private long maxIdleMillis;
+
 	/**
 	 * HOST:PORT分割符
 	 */
@@ -52,10 +56,12 @@ public class ThriftSocketPoolFactory extends BaseKeyedPooledObjectFactory<String
 			tsocket.open();
 		} catch (Exception e){
 			//先打印，在抛出异常
-			log.error("Create TSocket[{}] of key[{}] error: {}", JSON.toJSONString(tsocket.getSocket().getLocalSocketAddress()), key, e);
+			log.error("Create TSocket of key[{}] error", key, e);
 			throw e;
 		}
-		log.debug("Create TSocket[{}] of key[{}] successfully", JSON.toJSONString(tsocket.getSocket().getLocalSocketAddress()), key);
+		if (log.isDebugEnabled()) {
+			log.debug("Create TSocket[{}] of key[{}] successfully", tsocket.getSocket().getLocalSocketAddress(), key);
+		}
 		return tsocket;
 	}
 
@@ -67,26 +73,40 @@ public class ThriftSocketPoolFactory extends BaseKeyedPooledObjectFactory<String
 
 	@Override
 	public void destroyObject(String key, PooledObject<TSocket> p) throws Exception {
-		String tSocket = JSON.toJSONString(p.getObject().getSocket().getLocalSocketAddress());
-		log.debug("start to destroy TSocket[{}] of key[{}]", tSocket, key);
+		TSocket tsocket = p == null ? null : p.getObject();
+		if (tsocket == null) {
+			return;
+		}
+		if (log.isDebugEnabled()) {
+			//获取本地地址会创建对象，只在debug时获取
+			log.debug("start to destroy TSocket[{}] of key[{}]", tsocket.getSocket().getLocalSocketAddress(), key);
+		}
 		//关闭连接
-		if(p != null && p.getObject() != null && p.getObject().isOpen()){
-			p.getObject().close();
+		if(tsocket.isOpen()){
+			tsocket.close();
 		}
-		log.debug("Destroy socket[{}] of key[{}] successfully", tSocket, key);
+		log.debug("Destroy socket of key[{}] successfully", key);
 	}
 
+	/**
+	 * 校验连接：只读取socket状态和连接池记录的最后归还时间，不产生对象
+	 * @param key
+	 * @param p
+	 * @return
+	 */
 	@Override
 	public boolean validateObject(String key, PooledObject<TSocket> p) {
-		//检验连接
-		String tSocket = JSON.toJSONString(p.getObject().getSocket().getLocalSocketAddress());
-		log.debug("Start to check TSocket[{}] of key[{}]", tSocket, key);
-		boolean isValid = false;
-		if(p != null && p.getObject() != null){
-			isValid = p.getObject().isOpen();
+		TSocket tsocket = p == null ? null : p.getObject();
+		if (tsocket == null || !tsocket.isOpen()) {
+			log.debug("Check TSocket of key[{}] result[false]: closed", key);
+			return false;
+		}
+		if (maxIdleMillis > 0 && System.currentTimeMillis() - p.getLastReturnTime() > maxIdleMillis) {
+			//长时间未使用，可能已被防火墙断开，重建
+			log.debug("Check TSocket of key[{}] result[false]: idle too long", key);
+			return false;
 		}
-		log.debug("Check TSocket[{}] of key[{}] result[{}]", tSocket, key, isValid);
-		return isValid;
+		return true;
 	}
 
 }
@@ -1,6 +1,5 @@
 package com.tiger.rpc.thrift.consumer.handler;
 
-import com.alibaba.fastjson.JSON;
 import com.tiger.rpc.common.consumer.handler.DefaultRpcHandler;
 import com.tiger.rpc.common.consumer.policy.ProviderStrategy;
 import com.tiger.rpc.thrift.consumer.ThriftServiceDiscovery;
@@ -120,8 +119,11 @@ public class ThriftDirectorHandler extends DefaultRpcHandler<TSocket> implements
 
     @Override
     protected void processFinally(String key, Object client, TSocket tsocket) {
-        log.debug("Release the current socket[{}] connected to provider[{}]",
-                JSON.toJSONString(tsocket.getSocket().getLocalSocketAddress()), key);
+        if (log.isDebugEnabled()) {
+            //获取本地地址会创建对象，只在debug时获取
+            log.debug("Release the current socket[{}] connected to provider[{}]",
+                    tsocket.getSocket().getLocalSocketAddress(), key);
+        }
     }
 
     @Override